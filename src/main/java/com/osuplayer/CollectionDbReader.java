@@ -0,0 +1,61 @@
+package com.osuplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lector del collection.db de osu! stable: una lista de colecciones con nombre, cada una con los hashes MD5
+ * de los .osu que contiene. Usa el mismo formato de cadenas que {@link OsuDbReader}.
+ */
+public final class CollectionDbReader {
+
+    private static final String DB_FILE = "collection.db";
+
+    private CollectionDbReader() {}
+
+    public record Collection(String name, List<String> beatmapHashes) {}
+
+    /**
+     * Devuelve el collection.db de la instalación a la que pertenece la carpeta Songs, o null si no existe.
+     */
+    public static File locate(File songsFolder) {
+        File parent = songsFolder.getAbsoluteFile().getParentFile();
+        if (parent == null) return null;
+        File db = new File(parent, DB_FILE);
+        return db.isFile() ? db : null;
+    }
+
+    public static List<Collection> read(File dbFile) throws IOException {
+        return read(ByteBuffer.wrap(Files.readAllBytes(dbFile.toPath())).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    static List<Collection> read(ByteBuffer in) throws IOException {
+        try {
+            in.getInt(); // versión
+            int count = in.getInt();
+            if (count < 0) throw new IOException("Número de colecciones no válido: " + count);
+
+            List<Collection> collections = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; i++) {
+                String name = OsuDbReader.readString(in);
+                int size = in.getInt();
+                if (size < 0) throw new IOException("Tamaño de colección no válido: " + size);
+                List<String> hashes = new ArrayList<>(Math.min(size, 4096));
+                for (int j = 0; j < size; j++) {
+                    String hash = OsuDbReader.readString(in);
+                    if (hash != null) hashes.add(hash);
+                }
+                if (name != null && !name.isBlank()) collections.add(new Collection(name.trim(), hashes));
+            }
+            return collections;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("collection.db incompleto o dañado", e);
+        }
+    }
+}
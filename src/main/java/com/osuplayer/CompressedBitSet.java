@@ -0,0 +1,156 @@
+package com.osuplayer;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Conjunto de IDs comprimido por bloques de 65536, al estilo de los roaring bitmaps: cada bloque es una
+ * lista ordenada de los 16 bits bajos mientras tiene pocos elementos, y un mapa de bits de 8 KB cuando pasa
+ * de {@link #ARRAY_MAX}. Un tag usado por veinte canciones ocupa unos pocos bytes en lugar de un BitSet del
+ * tamaño de la biblioteca, y uno usado por miles sigue intersectándose palabra a palabra.
+ */
+final class CompressedBitSet {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    // Un contenedor por bloque (ID >>> 16): char[] ordenado o long[] de 1024 palabras.
+    private Object[] containers = new Object[0];
+    // Elementos de cada contenedor; en los de tipo lista también es su longitud ocupada.
+    private int[] counts = new int[0];
+    private int cardinality;
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    boolean contains(int id) {
+        int block = id >>> 16;
+        if (block >= containers.length || containers[block] == null) return false;
+        char low = (char) id;
+        if (containers[block] instanceof long[] bitmap) return (bitmap[low >>> 6] & (1L << low)) != 0;
+        return Arrays.binarySearch((char[]) containers[block], 0, counts[block], low) >= 0;
+    }
+
+    void add(int id) {
+        int block = id >>> 16;
+        if (block >= containers.length) {
+            containers = Arrays.copyOf(containers, block + 1);
+            counts = Arrays.copyOf(counts, block + 1);
+        }
+        char low = (char) id;
+        Object container = containers[block];
+        if (container == null) {
+            containers[block] = container = new char[4];
+        }
+        if (container instanceof long[] bitmap) {
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) != 0) return;
+            bitmap[low >>> 6] |= bit;
+        } else {
+            char[] array = (char[]) container;
+            int count = counts[block];
+            int pos = count > 0 && array[count - 1] < low ? -count - 1 : Arrays.binarySearch(array, 0, count, low);
+            if (pos >= 0) return;
+            if (count == ARRAY_MAX) {
+                long[] bitmap = toBitmap(array, count);
+                bitmap[low >>> 6] |= 1L << low;
+                containers[block] = bitmap;
+            } else {
+                pos = -pos - 1;
+                if (count == array.length) containers[block] = array = Arrays.copyOf(array, Math.min(ARRAY_MAX, count * 2));
+                System.arraycopy(array, pos, array, pos + 1, count - pos);
+                array[pos] = low;
+            }
+        }
+        counts[block]++;
+        cardinality++;
+    }
+
+    void remove(int id) {
+        int block = id >>> 16;
+        if (block >= containers.length || containers[block] == null) return;
+        char low = (char) id;
+        if (containers[block] instanceof long[] bitmap) {
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) == 0) return;
+            bitmap[low >>> 6] &= ~bit;
+            if (counts[block] - 1 <= ARRAY_MAX / 2) containers[block] = toArray(bitmap, counts[block] - 1);
+        } else {
+            char[] array = (char[]) containers[block];
+            int pos = Arrays.binarySearch(array, 0, counts[block], low);
+            if (pos < 0) return;
+            System.arraycopy(array, pos + 1, array, pos, counts[block] - pos - 1);
+        }
+        if (--counts[block] == 0) containers[block] = null;
+        cardinality--;
+    }
+
+    /** Número de IDs que están también en other, sin construir la intersección. */
+    int andCardinality(BitSet other) {
+        int total = 0;
+        for (int block = 0; block < containers.length; block++) {
+            Object container = containers[block];
+            if (container == null) continue;
+            int base = block << 16;
+            if (container instanceof long[] bitmap) {
+                // BitSet no expone sus palabras: se recorren sus bits dentro del bloque.
+                for (int id = other.nextSetBit(base); id >= 0 && id < base + (1 << 16); id = other.nextSetBit(id + 1)) {
+                    int low = id - base;
+                    if ((bitmap[low >>> 6] & (1L << low)) != 0) total++;
+                }
+            } else {
+                char[] array = (char[]) container;
+                for (int i = 0; i < counts[block]; i++) {
+                    if (other.get(base | array[i])) total++;
+                }
+            }
+        }
+        return total;
+    }
+
+    BitSet toBitSet() {
+        BitSet bits = new BitSet();
+        for (int block = 0; block < containers.length; block++) {
+            Object container = containers[block];
+            if (container == null) continue;
+            int base = block << 16;
+            if (container instanceof long[] bitmap) {
+                for (int word = 0; word < BITMAP_WORDS; word++) {
+                    long value = bitmap[word];
+                    while (value != 0) {
+                        bits.set(base + (word << 6) + Long.numberOfTrailingZeros(value));
+                        value &= value - 1;
+                    }
+                }
+            } else {
+                char[] array = (char[]) container;
+                for (int i = 0; i < counts[block]; i++) bits.set(base | array[i]);
+            }
+        }
+        return bits;
+    }
+
+    private static long[] toBitmap(char[] array, int count) {
+        long[] bitmap = new long[BITMAP_WORDS];
+        for (int i = 0; i < count; i++) bitmap[array[i] >>> 6] |= 1L << array[i];
+        return bitmap;
+    }
+
+    private static char[] toArray(long[] bitmap, int count) {
+        char[] array = new char[count];
+        int i = 0;
+        for (int word = 0; word < BITMAP_WORDS; word++) {
+            long value = bitmap[word];
+            while (value != 0) {
+                array[i++] = (char) ((word << 6) + Long.numberOfTrailingZeros(value));
+                value &= value - 1;
+            }
+        }
+        return array;
+    }
+}
@@ -0,0 +1,192 @@
+package com.osuplayer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Almacenamiento de la configuración a prueba de cortes: una copia completa (config.properties) más un
+ * diario de cambios (config.journal) al que solo se añaden líneas. Un cambio pequeño, como añadir una canción
+ * a una playlist, cuesta una línea en el diario en lugar de reescribir todo.
+ *
+ * La copia completa se escribe en un archivo temporal, se fuerza a disco y se renombra sobre la anterior, así
+ * que un corte a mitad deja la copia vieja intacta. Al arrancar se lee la copia y se repite el diario encima;
+ * una última línea a medias (sin salto de línea) se ignora. Todas las operaciones son idempotentes, así que
+ * repetir un diario que ya estaba incluido en la copia no cambia nada.
+ */
+final class ConfigJournal {
+
+    private static final String COMMENT = "Configuración de OSU! Music Player";
+
+    private static final String SET = "set";
+    private static final String REMOVE = "del";
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private final Path tempFile;
+    private long journalBytes;
+
+    ConfigJournal(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = snapshotFile.resolveSibling(baseName(snapshotFile) + ".journal");
+        this.tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+    }
+
+    /** Tamaño actual del diario en bytes. */
+    long journalBytes() {
+        return journalBytes;
+    }
+
+    /**
+     * Carga la copia completa y aplica el diario. Devuelve el número de cambios del diario aplicados.
+     */
+    int load(Properties props) throws IOException {
+        Files.deleteIfExists(tempFile);
+        if (Files.exists(snapshotFile)) {
+            try (var input = Files.newInputStream(snapshotFile)) {
+                props.load(input);
+            }
+        }
+        if (!Files.exists(journalFile)) return 0;
+
+        byte[] bytes = Files.readAllBytes(journalFile);
+        journalBytes = bytes.length;
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        int applied = 0;
+        int start = 0;
+        for (int end = text.indexOf('\n'); end >= 0; end = text.indexOf('\n', start)) {
+            if (apply(props, text.substring(start, end))) applied++;
+            start = end + 1;
+        }
+        if (start < text.length()) {
+            System.out.println("Se ha descartado un cambio incompleto al final de " + journalFile.getFileName() + ".");
+        }
+        return applied;
+    }
+
+    /** Añade cambios al diario y lo fuerza a disco. */
+    void append(List<String> records) throws IOException {
+        if (records.isEmpty()) return;
+        StringBuilder text = new StringBuilder();
+        for (String record : records) text.append(record).append('\n');
+        ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(journalFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) journalBytes += channel.write(buffer);
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Escribe una copia completa de forma atómica y vacía el diario, cuyos cambios ya están en ella.
+     */
+    void compact(Properties snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream output = Channels.newOutputStream(channel);
+            snapshot.store(output, COMMENT);
+            output.flush();
+            channel.force(true);
+        }
+        try {
+            Files.move(tempFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // Si se corta aquí, el diario se repite sobre una copia que ya lo incluye, sin efecto.
+        Files.deleteIfExists(journalFile);
+        journalBytes = 0;
+    }
+
+    static String set(String key, String value) {
+        return encode(SET, key, value);
+    }
+
+    static String remove(String key) {
+        return encode(REMOVE, key);
+    }
+
+    /**
+     * Aplica un cambio a props. Devuelve false si no es un cambio válido (por ejemplo, de una versión posterior).
+     */
+    static boolean apply(Properties props, String record) {
+        List<String> fields = decode(record);
+        if (fields.isEmpty()) return false;
+        switch (fields.get(0)) {
+            case SET -> {
+                if (fields.size() != 3) return false;
+                props.setProperty(fields.get(1), fields.get(2));
+            }
+            case REMOVE -> {
+                if (fields.size() != 2) return false;
+                props.remove(fields.get(1));
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Campos separados por tabuladores; \, tabulador y saltos de línea se escapan.
+    private static String encode(String... fields) {
+        StringBuilder record = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) record.append('\t');
+            String field = fields[i];
+            for (int j = 0; j < field.length(); j++) {
+                char c = field.charAt(j);
+                switch (c) {
+                    case '\\' -> record.append("\\\\");
+                    case '\t' -> record.append("\\t");
+                    case '\n' -> record.append("\\n");
+                    case '\r' -> record.append("\\r");
+                    default -> record.append(c);
+                }
+            }
+        }
+        return record.toString();
+    }
+
+    private static List<String> decode(String record) {
+        List<String> fields = new ArrayList<>();
+        if (record.isEmpty()) return fields;
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (c == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\\' && i + 1 < record.length()) {
+                char next = record.charAt(++i);
+                field.append(switch (next) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    default -> next;
+                });
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String baseName(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
@@ -1,40 +1,156 @@
 package com.osuplayer;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Configuración guardada en config.properties. Cada cambio se anota como una línea de un diario
+ * ({@link ConfigJournal}) que un hilo en segundo plano escribe como mucho una vez cada
+ * {@link #FLUSH_DELAY_MILLIS}, así que muchos cambios seguidos (por ejemplo al arrastrar el volumen) acaban
+ * en una sola escritura pequeña. Cuando el diario crece se reescribe la copia completa de forma atómica y se
+ * vacía. Al cerrar hay que llamar a {@link #shutdown()} para no perder los últimos cambios.
+ */
 public class ConfigManager {
 
     private static final String CONFIG_FILE = "config.properties";
+    private static final long FLUSH_DELAY_MILLIS = 500;
+    // Tamaño del diario a partir del cual se reescribe la copia completa.
+    private static final long COMPACT_BYTES = 256 * 1024;
+
     private final Properties props = new Properties();
+    private final ConfigJournal journal = new ConfigJournal(Path.of(CONFIG_FILE));
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "config-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    // Solo una escritura a la vez; se toma antes que el cerrojo de la configuración.
+    private final Object writeLock = new Object();
+    private ScheduledFuture<?> pendingFlush;
+    // Cambios aún no escritos en el diario, y si hay que reescribir la copia completa en la próxima escritura.
+    private List<String> pendingRecords = new ArrayList<>();
+    private String lastSetKey;
+    private boolean compactPending;
+    // Guardados pedidos y escrituras hechas: la diferencia son las escrituras ahorradas.
+    private long saveRequests;
+    private long writes;
 
     public ConfigManager() {
         loadProperties();
     }
 
     private void loadProperties() {
-        try (InputStream input = new FileInputStream(CONFIG_FILE)) {
-            props.load(input);
+        try {
+            // Lo que se recupere del diario se pasa a la copia completa en la primera escritura.
+            compactPending = journal.load(props) > 0;
         } catch (IOException e) {
             System.out.println("No se pudo cargar config.properties, se usarán valores por defecto.");
         }
     }
 
+    private void set(String key, String value) {
+        synchronized (this) {
+            props.setProperty(key, value);
+            String record = ConfigJournal.set(key, value);
+            // Un valor que cambia muchas veces seguidas (el volumen) solo deja su último valor.
+            if (key.equals(lastSetKey)) pendingRecords.set(pendingRecords.size() - 1, record);
+            else pendingRecords.add(record);
+            lastSetKey = key;
+        }
+        saveProperties();
+    }
+
+    private void remove(String key) {
+        synchronized (this) {
+            if (props.remove(key) == null) return;
+            addRecord(ConfigJournal.remove(key));
+        }
+        saveProperties();
+    }
+
+    private void addRecord(String record) {
+        pendingRecords.add(record);
+        lastSetKey = null;
+    }
+
+    /** Programa la escritura de los cambios pendientes si no hay ya una programada. */
     private void saveProperties() {
-        try (OutputStream output = new FileOutputStream(CONFIG_FILE)) {
-            props.store(output, "Configuración de OSU! Music Player");
-        } catch (IOException e) {
-            System.out.println("No se pudo guardar config.properties.");
+        synchronized (this) {
+            saveRequests++;
+            if (!writer.isShutdown()) {
+                if (pendingFlush == null) {
+                    pendingFlush = writer.schedule(() -> flush(), FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
         }
+        // Cambios hechos después de cerrar: se escriben ya en el hilo que llama, fuera del cerrojo de la
+        // configuración porque flush toma antes el de escritura.
+        flush();
+    }
+
+    /**
+     * Escribe ya los cambios pendientes, si los hay, en el hilo que llama.
+     */
+    public void flush() {
+        flush(false);
+    }
+
+    private void flush(boolean compact) {
+        synchronized (writeLock) {
+            List<String> records;
+            Properties snapshot = null;
+            synchronized (this) {
+                if (pendingFlush != null) {
+                    pendingFlush.cancel(false);
+                    pendingFlush = null;
+                }
+                if (pendingRecords.isEmpty() && !compactPending && !(compact && journal.journalBytes() > 0)) return;
+                records = pendingRecords;
+                pendingRecords = new ArrayList<>();
+                lastSetKey = null;
+                writes++;
+                if (compact || compactPending || journal.journalBytes() >= COMPACT_BYTES) {
+                    // La copia ya incluye los cambios pendientes; se escribe una copia de props para no
+                    // bloquear a quien cambie la configuración mientras tanto.
+                    snapshot = (Properties) props.clone();
+                    compactPending = false;
+                }
+            }
+            try {
+                if (snapshot != null) journal.compact(snapshot);
+                else journal.append(records);
+            } catch (IOException e) {
+                System.out.println("No se pudo guardar config.properties.");
+                // Los cambios ya están en memoria: se reintenta con una copia completa.
+                synchronized (this) {
+                    compactPending = true;
+                }
+            }
+        }
+    }
+
+    /** Escribe lo pendiente como copia completa, vaciando el diario, y detiene el hilo de escritura. */
+    public void shutdown() {
+        flush(true);
+        writer.shutdown();
+        System.out.println("Se han evitado " + getSavedWrites() + " escrituras de config.properties al agrupar cambios.");
+    }
+
+    /** Número de escrituras evitadas al agrupar cambios seguidos. */
+    public synchronized long getSavedWrites() {
+        return saveRequests - writes - (pendingRecords.isEmpty() ? 0 : 1);
     }
 
     public double getVolume() {
@@ -42,8 +158,7 @@ public class ConfigManager {
     }
 
     public void setVolume(double volume) {
-        props.setProperty("volume", Double.toString(volume));
-        saveProperties();
+        set("volume", Double.toString(volume));
     }
 
     public String getLastFolder() {
@@ -51,19 +166,25 @@ public class ConfigManager {
     }
 
     public void setLastFolder(String folderPath) {
-        props.setProperty("lastFolder", folderPath);
-        saveProperties();
+        set("lastFolder", folderPath);
     }
 
+    /**
+     * Favoritos guardados en config.properties por versiones anteriores, solo para pasarlos a la playlist
+     * Favoritos de {@link PlaylistStore}. Las canciones con comas en el nombre no se pueden recuperar bien.
+     */
     public List<String> getFavorites() {
         return parseList(props.getProperty("favorites", ""), ",");
     }
 
-    public void setFavorites(List<String> favorites) {
-        props.setProperty("favorites", String.join(",", favorites));
-        saveProperties();
+    public void removeFavorites() {
+        remove("favorites");
     }
 
+    /**
+     * Playlists guardadas en config.properties por versiones anteriores, solo para pasarlas a
+     * {@link PlaylistStore}. Las canciones con comas en el nombre no se pueden recuperar bien.
+     */
     public Map<String, List<String>> getPlaylists() {
         Map<String, List<String>> playlists = new HashMap<>();
         for (String key : props.stringPropertyNames()) {
@@ -75,12 +196,47 @@ public class ConfigManager {
         return playlists;
     }
 
-    public void setPlaylists(Map<String, List<String>> playlists) {
-        props.keySet().removeIf(k -> k.toString().startsWith("playlist."));
-        for (Map.Entry<String, List<String>> entry : playlists.entrySet()) {
-            props.setProperty("playlist." + entry.getKey(), String.join(",", entry.getValue()));
+    public void removePlaylist(String name) {
+        remove("playlist." + name);
+    }
+
+    /** Reglas de las playlists inteligentes, por nombre. */
+    public Map<String, String> getSmartPlaylists() {
+        Map<String, String> rules = new HashMap<>();
+        for (String key : props.stringPropertyNames()) {
+            if (key.startsWith("smartPlaylist.")) rules.put(key.substring("smartPlaylist.".length()), props.getProperty(key));
         }
-        saveProperties();
+        return rules;
+    }
+
+    public void setSmartPlaylist(String name, String rule) {
+        set("smartPlaylist." + name, rule);
+    }
+
+    public void removeSmartPlaylist(String name) {
+        remove("smartPlaylist." + name);
+    }
+
+    /** Última reproducción de cada canción, en milisegundos desde 1970. */
+    public Map<String, Long> getLastPlayedTimes() {
+        Map<String, Long> times = new HashMap<>();
+        for (String key : props.stringPropertyNames()) {
+            if (!key.startsWith("lastPlayed.")) continue;
+            try {
+                times.put(key.substring("lastPlayed.".length()), Long.parseLong(props.getProperty(key)));
+            } catch (NumberFormatException e) {
+                // Se ignora el valor dañado.
+            }
+        }
+        return times;
+    }
+
+    public void setLastPlayed(String song, long millis) {
+        set("lastPlayed." + song, Long.toString(millis));
+    }
+
+    public void removeLastPlayed(String song) {
+        remove("lastPlayed." + song);
     }
 
     public String getCurrentSong() {
@@ -92,9 +248,8 @@ public class ConfigManager {
     }
 
     public void setCurrentSong(String song, double position) {
-        props.setProperty("currentSong", song);
-        props.setProperty("currentSongPosition", Double.toString(position));
-        saveProperties();
+        set("currentSong", song);
+        set("currentSongPosition", Double.toString(position));
     }
 
     public String getLastSong() {
@@ -102,13 +257,11 @@ public class ConfigManager {
     }
 
     public void setLastSong(String songName) {
-        props.setProperty("lastSong", songName);
-        saveProperties();
+        set("lastSong", songName);
     }
 
     public void setPlayHistory(List<String> history) {
-        props.setProperty("playHistory", String.join(";", history));
-        saveProperties();
+        set("playHistory", String.join(";", history));
     }
 
     public List<String> getPlayHistory() {
@@ -116,8 +269,7 @@ public class ConfigManager {
     }
 
     public void setHistoryIndex(int index) {
-        props.setProperty("historyIndex", String.valueOf(index));
-        saveProperties();
+        set("historyIndex", String.valueOf(index));
     }
 
     public int getHistoryIndex() {
@@ -132,13 +284,110 @@ public class ConfigManager {
         return props.getProperty("songsDirectory", "");
     }
 
+    /** Hilos del escaneo, de scan.threads en config.properties; sin valor, uno por procesador. */
+    public int getScanThreads() {
+        try {
+            int threads = Integer.parseInt(props.getProperty("scan.threads", "0").trim());
+            return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        } catch (NumberFormatException e) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    /**
+     * Si el escaneo lee también [TimingPoints] para obtener el BPM de cada canción.
+     */
+    public boolean isScanBpmEnabled() {
+        return Boolean.parseBoolean(props.getProperty("scan.bpm", "true"));
+    }
+
+    public void setScanBpmEnabled(boolean enabled) {
+        set("scan.bpm", Boolean.toString(enabled));
+    }
+
+    /**
+     * Si la biblioteca se importa del osu!.db de osu! stable cuando existe, en lugar de leer cada carpeta.
+     */
+    public boolean isOsuDbImportEnabled() {
+        return Boolean.parseBoolean(props.getProperty("library.osudb", "true"));
+    }
+
+    public void setOsuDbImportEnabled(boolean enabled) {
+        set("library.osudb", Boolean.toString(enabled));
+    }
+
+    /**
+     * Tamaño máximo, en MB, de la caché temporal donde se extraen los archivos de los .osz.
+     */
+    public int getOszCacheMegabytes() {
+        try {
+            int megabytes = Integer.parseInt(props.getProperty("osz.cache.mb", "1024").trim());
+            return megabytes > 0 ? megabytes : 1024;
+        } catch (NumberFormatException e) {
+            return 1024;
+        }
+    }
+
+    public void setOszCacheMegabytes(int megabytes) {
+        set("osz.cache.mb", String.valueOf(megabytes));
+    }
+
+    /**
+     * Si la búsqueda ignora acentos ("cancion" encuentra "canción").
+     */
+    public boolean isSearchIgnoreAccents() {
+        return Boolean.parseBoolean(props.getProperty("search.accents.ignore", "true"));
+    }
+
+    public void setSearchIgnoreAccents(boolean enabled) {
+        set("search.accents.ignore", Boolean.toString(enabled));
+    }
+
+    /**
+     * Si la búsqueda trata igual los caracteres de ancho completo y los normales ("ＡＢＣ" y "abc").
+     */
+    public boolean isSearchFoldWidth() {
+        return Boolean.parseBoolean(props.getProperty("search.width.fold", "true"));
+    }
+
+    public void setSearchFoldWidth(boolean enabled) {
+        set("search.width.fold", Boolean.toString(enabled));
+    }
+
+    /**
+     * Si la búsqueda aproximada (tolerante a errores, ordenada por parecido) está activada.
+     */
+    public boolean isSearchFuzzy() {
+        return Boolean.parseBoolean(props.getProperty("search.fuzzy", "false"));
+    }
+
+    public void setSearchFuzzy(boolean enabled) {
+        set("search.fuzzy", Boolean.toString(enabled));
+    }
+
+    /** Nombre de la constante de UIHelper.SongOrder con la que se ordena "Todo"; vacío si no se ordena. */
+    public String getSongOrder() {
+        return props.getProperty("songs.order", "");
+    }
+
+    public void setSongOrder(String order) {
+        set("songs.order", order);
+    }
+
+    public boolean isLibraryWatchEnabled() {
+        return Boolean.parseBoolean(props.getProperty("library.watch", "true"));
+    }
+
+    public void setLibraryWatchEnabled(boolean enabled) {
+        set("library.watch", Boolean.toString(enabled));
+    }
+
     public double getWindowWidth() {
         return parseDouble(props.getProperty("window.width", "1200"), 1200);
     }
 
     public void setWindowWidth(double width) {
-        props.setProperty("window.width", Double.toString(width));
-        saveProperties();
+        set("window.width", Double.toString(width));
     }
 
     public double getWindowHeight() {
@@ -146,8 +395,7 @@ public class ConfigManager {
     }
 
     public void setWindowHeight(double height) {
-        props.setProperty("window.height", Double.toString(height));
-        saveProperties();
+        set("window.height", Double.toString(height));
     }
 
     private double parseDouble(String val, double def) {
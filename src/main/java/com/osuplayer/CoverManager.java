@@ -7,19 +7,13 @@ import javafx.scene.image.Image;
 
 public class CoverManager {
 
-    private final MusicManager musicManager;
-
-    public CoverManager(MusicManager musicManager) {
-        this.musicManager = musicManager;
-    }
-
-    public Image getCoverImage(String songName) {
-        String coverPath = musicManager.getCoverImagePath(songName);
+    /**
+     * Carga el fondo de la ruta, ya comprobada por MusicManager, o la portada por defecto si es null.
+     * Se llama fuera del hilo de JavaFX.
+     */
+    public Image getCoverImage(String coverPath) {
         if (coverPath != null) {
-            File coverFile = new File(coverPath);
-            if (coverFile.exists()) {
-                return new Image(coverFile.toURI().toString(), 0, 0, true, true);
-            }
+            return new Image(new File(coverPath).toURI().toString(), 0, 0, true, true);
         }
         return getDefaultCover();
     }
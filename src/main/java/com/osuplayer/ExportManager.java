@@ -4,18 +4,24 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * Encargado de exportar canciones individuales o listas de reproducción completas.
+ * Las rutas se toman en el hilo de JavaFX; la extracción de los .osz y la copia se hacen en el mismo hilo
+ * que prepara la reproducción.
  */
 public class ExportManager {
 
     private final MusicManager musicManager;
+    private final Executor mediaResolver;
 
-    public ExportManager(MusicManager musicManager) {
+    public ExportManager(MusicManager musicManager, Executor mediaResolver) {
         this.musicManager = musicManager;
+        this.mediaResolver = mediaResolver;
     }
 
     /**
@@ -23,26 +29,17 @@ public class ExportManager {
      * @param songName nombre de la canción a exportar
      */
     public void exportSong(String songName) {
-        String songPath = musicManager.getSongPath(songName);
-        if (songPath == null) return;
+        MusicManager.MediaSource source = musicManager.getMediaSource(songName);
+        if (source == null) return;
 
-        try {
-            File exportDir = new File("Exportado");
-            if (!exportDir.exists()) exportDir.mkdirs();
-
-            String extension = "";
-            int dotIndex = songPath.lastIndexOf('.');
-            if (dotIndex != -1) {
-                extension = songPath.substring(dotIndex);
+        mediaResolver.execute(() -> {
+            try {
+                File exportFile = export(source, exportDirectory());
+                if (exportFile != null) System.out.println("Canción exportada a: " + exportFile.getAbsolutePath());
+            } catch (IOException | RuntimeException ex) {
+                System.err.println("No se pudo exportar " + songName + ": " + ex.getMessage());
             }
-            String safeName = songName.replaceAll("[\\\\/:*?\"<>|]", "_");
-            File exportFile = new File(exportDir, safeName + extension);
-
-            Files.copy(new File(songPath).toPath(), exportFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            System.out.println("Canción exportada a: " + exportFile.getAbsolutePath());
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        }
+        });
     }
 
     /**
@@ -55,27 +52,42 @@ public class ExportManager {
         List<String> songs = playlists.get(playlistName);
         if (songs == null || songs.isEmpty()) return;
 
-        try {
-            File exportDir = new File("Exportado");
-            if (!exportDir.exists()) exportDir.mkdirs();
+        List<MusicManager.MediaSource> sources = new ArrayList<>(songs.size());
+        for (String song : songs) {
+            MusicManager.MediaSource source = musicManager.getMediaSource(song);
+            if (source != null) sources.add(source);
+        }
 
-            for (String song : songs) {
-                String songPath = musicManager.getSongPath(song);
-                if (songPath != null) {
-                    File sourceFile = new File(songPath);
-                    String extension = "";
-                    int dotIndex = songPath.lastIndexOf('.');
-                    if (dotIndex != -1) {
-                        extension = songPath.substring(dotIndex);
-                    }
-                    String safeName = song.replaceAll("[\\\\/:*?\"<>|]", "_");
-                    File destFile = new File(exportDir, safeName + extension);
-                    Files.copy(sourceFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                }
+        mediaResolver.execute(() -> {
+            try {
+                File exportDir = exportDirectory();
+                for (MusicManager.MediaSource source : sources) export(source, exportDir);
+                System.out.println("Playlist exportada a carpeta: " + exportDir.getAbsolutePath());
+            } catch (IOException | RuntimeException e) {
+                System.err.println("No se pudo exportar la playlist " + playlistName + ": " + e.getMessage());
             }
-            System.out.println("Playlist exportada a carpeta: " + exportDir.getAbsolutePath());
-        } catch (IOException e) {
-            e.printStackTrace();
+        });
+    }
+
+    private static File exportDirectory() {
+        File exportDir = new File("Exportado");
+        if (!exportDir.exists()) exportDir.mkdirs();
+        return exportDir;
+    }
+
+    /** Copia el audio de la canción; devuelve el archivo creado, o null si no se encontró el audio. */
+    private File export(MusicManager.MediaSource source, File exportDir) throws IOException {
+        String songPath = musicManager.getFilePath(source, source.audioFile());
+        if (songPath == null) return null;
+
+        String extension = "";
+        int dotIndex = songPath.lastIndexOf('.');
+        if (dotIndex != -1) {
+            extension = songPath.substring(dotIndex);
         }
+        String safeName = source.songName().replaceAll("[\\\\/:*?\"<>|]", "_");
+        File exportFile = new File(exportDir, safeName + extension);
+        Files.copy(new File(songPath).toPath(), exportFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return exportFile;
     }
 }
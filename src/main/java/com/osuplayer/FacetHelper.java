@@ -0,0 +1,99 @@
+package com.osuplayer;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import javafx.animation.PauseTransition;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ToggleButton;
+import javafx.scene.control.ToggleGroup;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+
+/**
+ * Panel para explorar la lista actual por tag o por mapper, con el número de canciones de cada uno,
+ * por ejemplo "tech (1,203)". Al pulsar un valor se añade su filtro a la búsqueda. Los recuentos se
+ * recalculan un momento después de que cambie la lista, no en cada cambio.
+ */
+public final class FacetHelper {
+
+    private static final int MAX_FACETS = 300;
+    private static final Duration REFRESH_DELAY = Duration.millis(250);
+
+    private final MusicManager musicManager;
+
+    private final ListView<MusicManager.Facet> facetListView = new ListView<>();
+    private final ToggleButton tagsButton = new ToggleButton("Tags");
+    private final ToggleButton creatorsButton = new ToggleButton("Mappers");
+    private final VBox facetPane;
+    private final PauseTransition refreshDelay = new PauseTransition(REFRESH_DELAY);
+
+    private ObservableList<String> songList;
+    private final ListChangeListener<String> songListListener = change -> refreshDelay.playFromStart();
+
+    public FacetHelper(MusicManager musicManager) {
+        this.musicManager = musicManager;
+
+        ToggleGroup group = new ToggleGroup();
+        tagsButton.setToggleGroup(group);
+        creatorsButton.setToggleGroup(group);
+        tagsButton.setSelected(true);
+        tagsButton.setFocusTraversable(false);
+        creatorsButton.setFocusTraversable(false);
+        // Siempre hay una opción marcada.
+        group.selectedToggleProperty().addListener((obs, oldToggle, newToggle) -> {
+            if (newToggle == null) oldToggle.setSelected(true);
+            else refresh();
+        });
+
+        HBox header = new HBox(5, new Label("Explorar"), tagsButton, creatorsButton);
+        this.facetPane = new VBox(5, header, facetListView);
+        VBox.setVgrow(facetListView, Priority.ALWAYS);
+        refreshDelay.setOnFinished(e -> refresh());
+    }
+
+    public VBox initialize(Consumer<String> onFacetSelected) {
+        facetListView.setCellFactory(lv -> new ListCell<>() {
+            @Override
+            protected void updateItem(MusicManager.Facet item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : String.format("%s (%,d)", item.label(), item.count()));
+            }
+        });
+        facetListView.setOnMouseClicked(event -> {
+            MusicManager.Facet selected = facetListView.getSelectionModel().getSelectedItem();
+            if (event.getButton() == MouseButton.PRIMARY && selected != null) onFacetSelected.accept(selected.filter());
+        });
+        return facetPane;
+    }
+
+    /**
+     * Lista cuyas canciones se cuentan (la que se está mostrando).
+     */
+    public void setSongList(ObservableList<String> songList) {
+        if (this.songList != null) this.songList.removeListener(songListListener);
+        this.songList = songList;
+        if (songList != null) songList.addListener(songListListener);
+        refresh();
+    }
+
+    public void refresh() {
+        refreshDelay.stop();
+        if (songList == null) {
+            facetListView.setItems(FXCollections.observableArrayList());
+            return;
+        }
+        List<MusicManager.Facet> facets = creatorsButton.isSelected()
+                ? musicManager.getCreatorFacets(songList, MAX_FACETS)
+                : musicManager.getTagFacets(songList, MAX_FACETS);
+        facetListView.setItems(FXCollections.observableArrayList(facets));
+    }
+}
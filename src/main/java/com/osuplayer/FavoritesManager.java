@@ -5,31 +5,48 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
+/**
+ * Favoritos, guardados como la playlist especial "Favoritos". Se mantiene además un conjunto en memoria
+ * para responder a {@link #isFavorite} sin leer la playlist.
+ */
 public class FavoritesManager {
 
+    private static final String FAVORITES = "Favoritos";
+
     private final Set<String> favorites;
-    private final ConfigManager configManager;
     private final PlaylistManager playlistManager;
+    private final List<Consumer<String>> changeListeners = new ArrayList<>();
 
-    public FavoritesManager(ConfigManager configManager, PlaylistManager playlistManager) {
-        this.configManager = configManager;
+    public FavoritesManager(PlaylistManager playlistManager) {
         this.playlistManager = playlistManager;
-        this.favorites = new HashSet<>(configManager.getFavorites());
+        this.favorites = new HashSet<>(playlistManager.getPlaylist(FAVORITES));
     }
 
     public void addFavorite(String song) {
         if (song != null && favorites.add(song)) {
-            saveFavorites();
+            playlistManager.addToPlaylist(FAVORITES, song);
+            notifyChanged(song);
         }
     }
 
     public void removeFavorite(String song) {
         if (song != null && favorites.remove(song)) {
-            saveFavorites();
+            playlistManager.removeFromPlaylist(FAVORITES, song);
+            notifyChanged(song);
         }
     }
 
+    /** Se llama con la canción cada vez que se añade o se quita de favoritos. */
+    public void addChangeListener(Consumer<String> listener) {
+        changeListeners.add(listener);
+    }
+
+    private void notifyChanged(String song) {
+        for (Consumer<String> listener : changeListeners) listener.accept(song);
+    }
+
     public void toggleFavorite(String song) {
         if (isFavorite(song)) {
             removeFavorite(song);
@@ -53,8 +70,8 @@ public class FavoritesManager {
     }
 
     private void saveFavorites() {
-        List<String> favList = new ArrayList<>(favorites);
-        configManager.setFavorites(favList);
-        playlistManager.setPlaylistSongs("Favoritos", favList);
+        List<String> favList = new ArrayList<>(playlistManager.getPlaylist(FAVORITES));
+        favList.retainAll(favorites);
+        playlistManager.setPlaylistSongs(FAVORITES, favList);
     }
 }
\ No newline at end of file
@@ -0,0 +1,171 @@
+package com.osuplayer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Índice binario de la biblioteca, guardado junto a config.properties.
+ * Guarda por cada carpeta de beatmap su fecha de modificación y los metadatos ya parseados,
+ * para que al arrancar solo se vuelvan a leer las carpetas nuevas o modificadas.
+ */
+public class LibraryIndex {
+
+    private static final String INDEX_FILE = "library.idx";
+    private static final int MAGIC = 0x4F534C58; // "OSLX"
+    private static final int VERSION = 3;
+
+    /**
+     * Estado de una carpeta en el momento del escaneo. metadata es null si la carpeta
+     * no tenía ninguna canción reproducible; también se guarda para no volver a leerla.
+     * coverFile y videoFile son los archivos de fondo y vídeo que existían en la carpeta
+     * (rutas relativas a ella), o null.
+     */
+    public record Entry(String folderName, long lastModified, OsuFileParser.BeatmapMetadata metadata,
+                        String coverFile, String videoFile) {
+
+        public Entry(String folderName, long lastModified, OsuFileParser.BeatmapMetadata metadata) {
+            this(folderName, lastModified, metadata, null, null);
+        }
+    }
+
+    private final File file;
+
+    public LibraryIndex() {
+        this(new File(INDEX_FILE));
+    }
+
+    public LibraryIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Carga las entradas guardadas para la carpeta raíz indicada, indexadas por nombre de carpeta.
+     * Devuelve un mapa vacío si no hay índice, está dañado o pertenece a otra carpeta raíz.
+     */
+    public Map<String, Entry> load(File root) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!file.exists()) return entries;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return entries;
+            // Ninguna longitud ni recuento puede superar el tamaño del archivo; si lo hace, está dañado.
+            long limit = file.length();
+            if (!root.getAbsolutePath().equals(readString(in, limit))) return entries;
+
+            int count = checkLength(in.readInt(), limit);
+            for (int i = 0; i < count; i++) {
+                String folderName = readString(in, limit);
+                long lastModified = in.readLong();
+                OsuFileParser.BeatmapMetadata metadata = in.readBoolean() ? readMetadata(in, limit) : null;
+                String coverFile = readString(in, limit);
+                String videoFile = readString(in, limit);
+                entries.put(folderName, new Entry(folderName, lastModified, metadata, coverFile, videoFile));
+            }
+        } catch (IOException e) {
+            System.err.println("Índice de biblioteca no válido, se escaneará de nuevo: " + e.getMessage());
+            entries.clear();
+        }
+        return entries;
+    }
+
+    public void save(File root, Collection<Entry> entries) {
+        File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, root.getAbsolutePath());
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                writeString(out, entry.folderName());
+                out.writeLong(entry.lastModified());
+                out.writeBoolean(entry.metadata() != null);
+                if (entry.metadata() != null) writeMetadata(out, entry.metadata());
+                writeString(out, entry.coverFile());
+                writeString(out, entry.videoFile());
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar el índice de biblioteca: " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar el índice de biblioteca: " + e.getMessage());
+        }
+    }
+
+    private static void writeMetadata(DataOutputStream out, OsuFileParser.BeatmapMetadata meta) throws IOException {
+        writeString(out, meta.title());
+        writeString(out, meta.artist());
+        writeString(out, meta.audioFilename());
+        writeString(out, meta.creator());
+        out.writeInt(meta.tags().size());
+        for (String tag : meta.tags()) writeString(out, tag);
+        writeString(out, meta.background());
+        writeString(out, meta.video());
+        writeString(out, meta.titleUnicode());
+        writeString(out, meta.artistUnicode());
+        writeString(out, meta.source());
+        out.writeInt(meta.beatmapSetId());
+        out.writeInt(meta.previewTime());
+        out.writeDouble(meta.bpm());
+    }
+
+    private static OsuFileParser.BeatmapMetadata readMetadata(DataInputStream in, long limit) throws IOException {
+        String title = readString(in, limit);
+        String artist = readString(in, limit);
+        String audioFilename = readString(in, limit);
+        String creator = readString(in, limit);
+        int tagCount = checkLength(in.readInt(), limit);
+        List<String> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) tags.add(readString(in, limit));
+        String background = readString(in, limit);
+        String video = readString(in, limit);
+        String titleUnicode = readString(in, limit);
+        String artistUnicode = readString(in, limit);
+        String source = readString(in, limit);
+        int beatmapSetId = in.readInt();
+        int previewTime = in.readInt();
+        double bpm = in.readDouble();
+        return new OsuFileParser.BeatmapMetadata(title, artist, audioFilename, creator, tags, background, video,
+                titleUnicode, artistUnicode, source, beatmapSetId, previewTime, bpm);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, long limit) throws IOException {
+        int length = in.readInt();
+        if (length == -1) return null;
+        byte[] bytes = new byte[checkLength(length, limit)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checkLength(int length, long limit) throws IOException {
+        if (length < 0 || length > limit) throw new IOException("longitud fuera de rango: " + length);
+        return length;
+    }
+}
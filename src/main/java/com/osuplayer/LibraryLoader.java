@@ -0,0 +1,132 @@
+package com.osuplayer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javafx.application.Platform;
+
+/**
+ * Carga la biblioteca en segundo plano y va publicando las canciones en el hilo de JavaFX por lotes.
+ * Los lotes que llegan mientras el hilo de JavaFX está ocupado se agrupan en una sola actualización.
+ * Iniciar otra carga cancela la anterior; sus lotes pendientes se descartan.
+ */
+public class LibraryLoader {
+
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * Todos los métodos se llaman en el hilo de JavaFX.
+     */
+    public interface Listener {
+        void onSongsAdded(List<String> songs);
+        void onProgress(int scannedFolders, int totalFolders);
+        void onFinished();
+    }
+
+    private final MusicManager musicManager;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "library-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private Load current;
+
+    public LibraryLoader(MusicManager musicManager) {
+        this.musicManager = musicManager;
+    }
+
+    /**
+     * Empieza a cargar la carpeta. Debe llamarse desde el hilo de JavaFX.
+     */
+    public void load(File folder, Listener listener) {
+        cancel();
+        musicManager.beginLoad(folder);
+        Load load = new Load(listener);
+        current = load;
+        executor.execute(() -> load.run(folder));
+    }
+
+    public boolean isLoading() {
+        return current != null;
+    }
+
+    public void cancel() {
+        if (current != null) {
+            current.cancelled.set(true);
+            current = null;
+        }
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private final class Load {
+        private final Listener listener;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final ConcurrentLinkedQueue<List<LibraryIndex.Entry>> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean drainScheduled = new AtomicBoolean();
+        private final AtomicInteger scannedFolders = new AtomicInteger();
+        private volatile int totalFolders;
+        private volatile boolean scanDone;
+        private volatile LibraryScanner.ScanStats stats;
+        private long mergeNanos;
+
+        Load(Listener listener) {
+            this.listener = listener;
+        }
+
+        void run(File folder) {
+            LibraryScanner.ScanStats result = null;
+            if (folder != null && folder.isDirectory()) {
+                result = musicManager.scanFolder(folder, BATCH_SIZE, cancelled::get,
+                        total -> totalFolders = total,
+                        batch -> {
+                            scannedFolders.addAndGet(batch.size());
+                            pending.add(batch);
+                            scheduleDrain();
+                        });
+            }
+            if (cancelled.get()) return;
+            stats = result;
+            scanDone = true;
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (drainScheduled.compareAndSet(false, true)) {
+                Platform.runLater(this::drain);
+            }
+        }
+
+        private void drain() {
+            drainScheduled.set(false);
+            if (this != current) return;
+
+            long start = System.nanoTime();
+            List<String> added = new ArrayList<>();
+            List<LibraryIndex.Entry> batch;
+            while ((batch = pending.poll()) != null) {
+                added.addAll(musicManager.mergeEntries(batch));
+            }
+            mergeNanos += System.nanoTime() - start;
+
+            if (!added.isEmpty()) listener.onSongsAdded(added);
+            listener.onProgress(scannedFolders.get(), totalFolders);
+
+            if (scanDone && pending.isEmpty()) {
+                current = null;
+                musicManager.finishLoad(stats, mergeNanos);
+                listener.onFinished();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.osuplayer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Recorre las carpetas de beatmaps y las procesa en paralelo con un ForkJoinPool.
+ * Los resultados se devuelven en el mismo orden en que se listaron las carpetas,
+ * para que la fusión posterior sea determinista sin importar el número de hilos.
+ */
+public class LibraryScanner {
+
+    /** Número de carpetas por debajo del cual una tarea deja de dividirse. */
+    private static final int SPLIT_THRESHOLD = 16;
+
+    private final int parallelism;
+
+    public LibraryScanner(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Lista las subcarpetas de la carpeta raíz, y los .osz sin extraer, en el orden que devuelve el sistema de archivos.
+     */
+    public File[] listBeatmapFolders(File root) {
+        if (root == null || !root.exists() || !root.isDirectory()) return new File[0];
+        File[] folders = root.listFiles(file -> OszCache.isArchive(file) ? file.isFile() : file.isDirectory());
+        return folders != null ? folders : new File[0];
+    }
+
+    /**
+     * Aplica el parser a cada carpeta. La posición i del resultado corresponde a folders[i];
+     * las carpetas sin canción válida quedan como null.
+     */
+    public <T> List<T> parseFolders(File[] folders, Function<File, T> parser) {
+        List<T> results = new ArrayList<>(folders.length);
+        parseFolders(folders, parser, Math.max(1, folders.length), () -> false, results::addAll);
+        return results;
+    }
+
+    /**
+     * Procesa las carpetas por lotes de batchSize y entrega cada lote a sink, siempre en el orden del listado,
+     * desde el hilo que llama. Entre lotes se consulta cancelled para poder abandonar el escaneo.
+     *
+     * @return false si el escaneo se canceló antes de terminar
+     */
+    @SuppressWarnings("unchecked")
+    public <T> boolean parseFolders(File[] folders, Function<File, T> parser, int batchSize,
+                                    BooleanSupplier cancelled, Consumer<List<T>> sink) {
+        boolean sequential = parallelism == 1 || folders.length <= SPLIT_THRESHOLD;
+        ForkJoinPool pool = sequential ? null : new ForkJoinPool(parallelism);
+        try {
+            for (int from = 0; from < folders.length; from += batchSize) {
+                if (cancelled.getAsBoolean()) return false;
+                int to = Math.min(folders.length, from + batchSize);
+                Object[] results = new Object[to - from];
+                if (sequential) {
+                    for (int i = from; i < to; i++) {
+                        results[i - from] = parseSafely(folders[i], parser);
+                    }
+                } else {
+                    pool.invoke(new ParseTask<>(folders, parser, results, from, from, to));
+                }
+                sink.accept((List<T>) Arrays.asList(results));
+            }
+            return !cancelled.getAsBoolean();
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+    }
+
+    private static <T> T parseSafely(File folder, Function<File, T> parser) {
+        try {
+            return parser.apply(folder);
+        } catch (RuntimeException e) {
+            System.err.println("Error procesando carpeta " + folder.getAbsolutePath() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Las tareas de ForkJoin son Serializable, pero estas nunca se serializan. */
+    private static class ParseTask<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient File[] folders;
+        private final transient Function<File, T> parser;
+        private final transient Object[] results;
+        private final int offset;
+        private final int from;
+        private final int to;
+
+        /** results[i - offset] recibe el resultado de folders[i]. */
+        ParseTask(File[] folders, Function<File, T> parser, Object[] results, int offset, int from, int to) {
+            this.folders = folders;
+            this.parser = parser;
+            this.results = results;
+            this.offset = offset;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    results[i - offset] = parseSafely(folders[i], parser);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ParseTask<>(folders, parser, results, offset, from, mid),
+                      new ParseTask<>(folders, parser, results, offset, mid, to));
+        }
+    }
+
+    /**
+     * Resumen de tiempos de un escaneo, por fase, para ajustar el paralelismo en cada equipo.
+     */
+    public record ScanStats(int folders, int cachedFolders, int importedFolders, int songs, int parallelism,
+                            long listingNanos, long parsingNanos, long mergingNanos) {
+
+        public long totalNanos() {
+            return listingNanos + parsingNanos + mergingNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Escaneo: %d carpetas (%d desde el índice, %d desde osu!.db), %d canciones, %d hilos | listado %d ms, parseo %d ms, fusión %d ms, total %d ms",
+                    folders, cachedFolders, importedFolders, songs, parallelism,
+                    listingNanos / 1_000_000, parsingNanos / 1_000_000, mergingNanos / 1_000_000, totalNanos() / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.osuplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.sun.nio.file.ExtendedWatchEventModifier;
+
+/**
+ * Vigila la carpeta Songs y avisa de qué carpetas de beatmap se han creado, borrado o modificado.
+ * Solo se registra Songs: donde el sistema lo admite (Windows) se vigila el árbol entero con una sola
+ * clave; en el resto, los cambios dentro de una carpeta que ya existía no generan eventos y se detectan
+ * por su fecha de modificación, al reproducir la canción o en el siguiente escaneo.
+ * Los eventos se agrupan hasta que pasa un intervalo sin cambios (por ejemplo, mientras se extrae un .osz),
+ * y el aviso se entrega en un hilo en segundo plano.
+ */
+public class LibraryWatcher {
+
+    private final File root;
+    private final long debounceMillis;
+    private final Consumer<Set<String>> onFoldersChanged;
+    private final Runnable onOverflow;
+
+    private final ScheduledExecutorService debouncer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "library-watcher-debounce");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Set<String> pendingFolders = new HashSet<>();
+    private ScheduledFuture<?> pendingFlush;
+    private WatchService watchService;
+    private Thread watchThread;
+
+    /**
+     * @param onFoldersChanged recibe los nombres de las carpetas afectadas
+     * @param onOverflow se llama si el sistema pierde eventos y hace falta un escaneo completo
+     */
+    public LibraryWatcher(File root, long debounceMillis, Consumer<Set<String>> onFoldersChanged, Runnable onOverflow) {
+        this.root = root;
+        this.debounceMillis = debounceMillis;
+        this.onFoldersChanged = onFoldersChanged;
+        this.onOverflow = onOverflow;
+    }
+
+    public void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            register(root.toPath());
+        } catch (IOException e) {
+            System.err.println("No se pudo vigilar la carpeta " + root.getAbsolutePath() + ": " + e.getMessage());
+            return;
+        }
+        watchThread = new Thread(this::watchLoop, "library-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    public void stop() {
+        try {
+            if (watchService != null) watchService.close();
+        } catch (IOException ignored) {}
+        debouncer.shutdownNow();
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        debouncer.execute(onOverflow);
+                        continue;
+                    }
+                    // Con el árbol entero la ruta es relativa a Songs; la carpeta de beatmap es el primer nombre.
+                    Path child = (Path) event.context();
+                    schedule(child.getName(0).toString());
+                }
+                if (!key.reset()) break;
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Se ha detenido el vigilante.
+        }
+    }
+
+    /** Registra Songs con su árbol si el sistema lo admite, o solo Songs si no. */
+    private void register(Path dir) throws IOException {
+        WatchEvent.Kind<?>[] kinds = {
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY
+        };
+        try {
+            dir.register(watchService, kinds, ExtendedWatchEventModifier.FILE_TREE);
+        } catch (UnsupportedOperationException e) {
+            dir.register(watchService, kinds);
+        }
+    }
+
+    private synchronized void schedule(String folderName) {
+        pendingFolders.add(folderName);
+        if (pendingFlush != null) pendingFlush.cancel(false);
+        if (!debouncer.isShutdown()) {
+            pendingFlush = debouncer.schedule(this::flush, debounceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        Set<String> folders;
+        synchronized (this) {
+            folders = new HashSet<>(pendingFolders);
+            pendingFolders.clear();
+            pendingFlush = null;
+        }
+        if (!folders.isEmpty()) onFoldersChanged.accept(folders);
+    }
+}
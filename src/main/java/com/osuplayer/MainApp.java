@@ -33,6 +33,8 @@ public class MainApp extends Application {
 
         // El manejador de cierre ahora accederá a los campos estáticos para liberar los recursos.
         primaryStage.setOnCloseRequest(event -> {
+            ui.shutdown();
+            configManager.shutdown();
             if (audioPlayer != null) {
                 audioPlayer.controls().stop();
                 audioPlayer.release();
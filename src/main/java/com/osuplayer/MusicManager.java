@@ -1,234 +1,803 @@
 package com.osuplayer;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.zip.ZipFile;
 
 import javafx.scene.image.Image;
 
 public class MusicManager {
 
-    private final Map<String, String> songs = new LinkedHashMap<>();
+    private final SongTable songs = new SongTable();
     private String lastFolderPath;
 
-    private final Map<String, String> songBaseFolders = new HashMap<>();
-    private final Map<String, List<String>> songCreators = new HashMap<>();
-    private final Map<String, List<String>> songTags = new HashMap<>();
-
     private final HistoryManager historyManager = new HistoryManager();
 
-    public Map<String, String> loadSongsFromFolder(File folder) {
+    private int scanParallelism = Runtime.getRuntime().availableProcessors();
+    private volatile boolean readBpm = true;
+    private volatile boolean useOsuDb = true;
+    private LibraryScanner.ScanStats lastScanStats;
+    private final LibraryIndex libraryIndex = new LibraryIndex();
+    // Se usa también desde el hilo que extrae de los .osz.
+    private volatile OszCache oszCache = new OszCache(1024L * 1024 * 1024);
+
+    // Estado del último escaneo, necesario para aplicar cambios incrementales y guardar el índice.
+    // Los metadatos de las canciones viven en la tabla; aquí solo se guardan los de las carpetas
+    // duplicadas (ocultas por otra con el mismo nombre), que la tabla no contiene.
+    private volatile File libraryRoot;
+    private final Map<String, Long> folderStamps = new LinkedHashMap<>();
+    private final Map<String, Integer> folderIds = new HashMap<>();
+    private final Map<String, LibraryIndex.Entry> shadowedFolders = new HashMap<>();
+    private volatile boolean indexStale;
+
+    // Índice hash MD5 de un .osu → carpeta, para resolver referencias de collection.db. Lo que trae el osu!.db
+    // se obtiene durante el escaneo; el resto de carpetas se calculan bajo demanda con hashBeatmapFolders.
+    private final Map<String, String> beatmapHashes = new HashMap<>();
+    private final Set<String> hashedFolders = new HashSet<>();
+    private volatile Map<String, String> scannedHashes = Map.of();
+
+    /**
+     * Cambios en la biblioteca tras aplicar un escaneo parcial.
+     */
+    public record LibraryDelta(List<String> added, List<String> removed) {
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    /**
+     * Carga la biblioteca completa en el hilo que llama. Equivale a {@link #beginLoad}, {@link #scanFolder},
+     * {@link #mergeEntries} por cada lote y {@link #finishLoad}.
+     */
+    public Set<String> loadSongsFromFolder(File folder) {
+        beginLoad(folder);
+        if (folder == null || !folder.exists() || !folder.isDirectory()) return getSongNames();
+
+        long[] mergeNanos = new long[1];
+        LibraryScanner.ScanStats stats = scanFolder(folder, Integer.MAX_VALUE, () -> false, total -> {}, batch -> {
+            long start = System.nanoTime();
+            mergeEntries(batch);
+            mergeNanos[0] += System.nanoTime() - start;
+        });
+        finishLoad(stats, mergeNanos[0]);
+        return getSongNames();
+    }
+
+    /**
+     * Vacía la biblioteca y fija la nueva carpeta raíz. Debe llamarse antes de fusionar lotes de un escaneo.
+     */
+    public void beginLoad(File folder) {
         songs.clear();
-        songBaseFolders.clear();
-        songTags.clear();
-        songCreators.clear();
-
-        if (folder == null || !folder.exists() || !folder.isDirectory()) return songs;
-
-        File[] beatmapFolders = folder.listFiles(File::isDirectory);
-        if (beatmapFolders == null) return songs;
-
-        for (File beatmapFolder : beatmapFolders) {
-            File[] osuFiles = beatmapFolder.listFiles((dir, name) -> name.toLowerCase().endsWith(".osu"));
-            if (osuFiles == null || osuFiles.length == 0) continue;
-
-            for (File osuFile : osuFiles) {
-                SongMetadata meta = parseOsuFile(osuFile);
-                if (meta != null && meta.audioFilename != null) {
-                    File audioFile = new File(beatmapFolder, meta.audioFilename);
-                    if (audioFile.exists()) {
-                        String displayName = meta.artist + " - " + meta.title;
-                        if (!songs.containsKey(displayName)) {
-                            songs.put(displayName, audioFile.getAbsolutePath());
-                            songBaseFolders.put(displayName, beatmapFolder.getAbsolutePath());
-                            songTags.put(displayName, parseTags(osuFile));
-                            songCreators.put(displayName, parseCreators(osuFile));
-                        }
-                        break;
-                    }
-                }
+        folderStamps.clear();
+        folderIds.clear();
+        shadowedFolders.clear();
+        beatmapHashes.clear();
+        hashedFolders.clear();
+        scannedHashes = Map.of();
+        libraryRoot = folder;
+        indexStale = false;
+    }
+
+    /**
+     * Lista la carpeta, toma del osu!.db de la instalación las carpetas que contiene, reutiliza el índice
+     * para las carpetas sin cambios y parsea el resto por lotes, entregándolos en orden de listado.
+     * No modifica la biblioteca, así que puede ejecutarse en segundo plano mientras el hilo de la interfaz
+     * fusiona los lotes con {@link #mergeEntries}.
+     *
+     * @param onTotal recibe el número de carpetas en cuanto se conoce
+     * @return estadísticas de listado y parseo (el tiempo de fusión lo añade {@link #finishLoad}), o null si se canceló
+     */
+    public LibraryScanner.ScanStats scanFolder(File folder, int batchSize, BooleanSupplier cancelled,
+                                               IntConsumer onTotal, Consumer<List<LibraryIndex.Entry>> onBatch) {
+        LibraryScanner scanner = new LibraryScanner(scanParallelism);
+
+        long start = System.nanoTime();
+        File[] beatmapFolders = scanner.listBeatmapFolders(folder);
+        Map<String, LibraryIndex.Entry> cached = libraryIndex.load(folder);
+        OsuDbImport osuDb = useOsuDb ? importOsuDb(folder) : OsuDbImport.EMPTY;
+        Map<String, LibraryIndex.Entry> imported = osuDb.entries();
+        onTotal.accept(beatmapFolders.length);
+        long listed = System.nanoTime();
+
+        AtomicInteger reused = new AtomicInteger();
+        AtomicInteger fromOsuDb = new AtomicInteger();
+        boolean completed = scanner.parseFolders(beatmapFolders, beatmapFolder -> {
+            LibraryIndex.Entry importedEntry = imported.get(beatmapFolder.getName());
+            if (importedEntry != null) {
+                fromOsuDb.incrementAndGet();
+                return importedEntry;
             }
-        }
-        return songs;
+            LibraryIndex.Entry previous = cached.get(beatmapFolder.getName());
+            if (previous != null && previous.lastModified() == beatmapFolder.lastModified() && hasRequiredFields(previous)) {
+                reused.incrementAndGet();
+                return previous;
+            }
+            return scanBeatmapFolder(beatmapFolder);
+        }, batchSize, cancelled, onBatch);
+        long parsed = System.nanoTime();
+        if (!completed) return null;
+        scannedHashes = osuDb.hashes();
+
+        // Carpetas nuevas, modificadas o borradas: el índice en disco ya no coincide. Si el osu!.db cubre
+        // toda la biblioteca el índice no se usa, así que no hace falta reescribirlo.
+        int parsedFolders = beatmapFolders.length - reused.get() - fromOsuDb.get();
+        indexStale = parsedFolders > 0 || (fromOsuDb.get() == 0 && reused.get() != cached.size());
+        return new LibraryScanner.ScanStats(beatmapFolders.length, reused.get(), fromOsuDb.get(), 0, scanner.getParallelism(),
+                listed - start, parsed - listed, 0);
     }
 
-    public String getSongPath(String songName) {
-        return songs.getOrDefault(songName, null);
+    /**
+     * Resultado de leer el osu!.db: una entrada por carpeta y el hash de cada dificultad.
+     */
+    private record OsuDbImport(Map<String, LibraryIndex.Entry> entries, Map<String, String> hashes) {
+        static final OsuDbImport EMPTY = new OsuDbImport(Map.of(), Map.of());
     }
 
-    public void setLastFolderPath(String path) {
-        this.lastFolderPath = path;
+    /**
+     * Entradas sacadas del osu!.db, una por carpeta (la primera dificultad reproducible). No se comprueba
+     * nada en disco: la fecha queda a 0 y el fondo y el vídeo se buscan la primera vez que se piden.
+     * Si no hay osu!.db o no se puede leer, no devuelve nada y se escanean las carpetas.
+     */
+    private static OsuDbImport importOsuDb(File folder) {
+        File dbFile = OsuDbReader.locate(folder);
+        if (dbFile == null) return OsuDbImport.EMPTY;
+
+        List<OsuDbReader.Beatmap> beatmaps;
+        try {
+            beatmaps = OsuDbReader.read(dbFile);
+        } catch (IOException e) {
+            System.err.println("No se pudo leer " + dbFile.getAbsolutePath() + ", se escaneará la carpeta: " + e.getMessage());
+            return OsuDbImport.EMPTY;
+        }
+
+        Map<String, LibraryIndex.Entry> entries = new HashMap<>();
+        Map<String, String> hashes = new HashMap<>(beatmaps.size() * 2);
+        for (OsuDbReader.Beatmap beatmap : beatmaps) {
+            if (beatmap.md5() != null) hashes.put(beatmap.md5(), beatmap.folderName());
+            if (beatmap.metadata().isPlayable() && !entries.containsKey(beatmap.folderName())) {
+                entries.put(beatmap.folderName(), new LibraryIndex.Entry(beatmap.folderName(), 0L, beatmap.metadata()));
+            }
+        }
+        return new OsuDbImport(entries, hashes);
     }
 
-    public String getLastFolderPath() {
-        return lastFolderPath;
+    /**
+     * Una entrada del índice guardada sin BPM no sirve si ahora se pide el BPM.
+     */
+    private boolean hasRequiredFields(LibraryIndex.Entry entry) {
+        return !readBpm || entry.metadata() == null || !Double.isNaN(entry.metadata().bpm());
     }
 
-    public String getSongBaseFolder(String songName) {
-        return songBaseFolders.getOrDefault(songName, null);
+    /**
+     * Fusiona un lote de entradas en la biblioteca y devuelve los nombres añadidos, en orden.
+     * La primera "Artista - Título" gana, igual que en un escaneo secuencial.
+     */
+    public List<String> mergeEntries(List<LibraryIndex.Entry> entries) {
+        List<String> added = new ArrayList<>();
+        for (LibraryIndex.Entry entry : entries) {
+            if (entry == null) continue;
+            folderStamps.put(entry.folderName(), entry.lastModified());
+            if (putSong(entry)) added.add(entry.metadata().displayName());
+        }
+        return added;
     }
 
-    public String getCoverImagePath(String songName) {
-        String baseFolder = getSongBaseFolder(songName);
-        if (baseFolder == null) return null;
+    /**
+     * Cierra una carga completa: guarda el índice si ha cambiado y registra las estadísticas.
+     */
+    public void finishLoad(LibraryScanner.ScanStats scanStats, long mergeNanos) {
+        long start = System.nanoTime();
+        addBeatmapHashes(scannedHashes, List.of());
+        scannedHashes = Map.of();
+        if (indexStale) saveIndex();
+        indexStale = false;
+        if (scanStats == null) return;
+
+        lastScanStats = new LibraryScanner.ScanStats(scanStats.folders(), scanStats.cachedFolders(), scanStats.importedFolders(), songs.liveCount(),
+                scanStats.parallelism(), scanStats.listingNanos(), scanStats.parsingNanos(),
+                mergeNanos + System.nanoTime() - start);
+        System.out.println(lastScanStats);
+    }
 
-        File beatmapFolder = new File(baseFolder);
-        File[] osuFiles = beatmapFolder.listFiles((dir, name) -> name.toLowerCase().endsWith(".osu"));
-        if (osuFiles == null) return null;
+    /**
+     * Añade la canción de la entrada si su nombre no está ya ocupado por otra carpeta.
+     */
+    private boolean putSong(LibraryIndex.Entry entry) {
+        OsuFileParser.BeatmapMetadata meta = entry.metadata();
+        if (meta == null) return false;
+        int id = songs.add(entry.folderName(), meta);
+        if (id < 0) {
+            shadowedFolders.put(entry.folderName(), entry);
+            return false;
+        }
+        songs.setMedia(id, entry.coverFile(), entry.videoFile(), entry.lastModified());
+        folderIds.put(entry.folderName(), id);
+        return true;
+    }
 
-        for (File osuFile : osuFiles) {
-            String bg = extractBackgroundFromOsuFile(osuFile);
-            if (bg != null) {
-                File bgFile = new File(beatmapFolder, bg);
-                if (bgFile.exists()) return bgFile.getAbsolutePath();
+    private void saveIndex() {
+        List<LibraryIndex.Entry> entries = new ArrayList<>(folderStamps.size());
+        for (Map.Entry<String, Long> stamp : folderStamps.entrySet()) {
+            String folderName = stamp.getKey();
+            Integer id = folderIds.get(folderName);
+            if (id == null) {
+                LibraryIndex.Entry shadowed = shadowedFolders.get(folderName);
+                entries.add(shadowed != null ? shadowed : new LibraryIndex.Entry(folderName, stamp.getValue(), null));
+            } else if (songs.mediaStamp(id) == stamp.getValue()) {
+                entries.add(new LibraryIndex.Entry(folderName, stamp.getValue(), songs.metadata(id),
+                        songs.coverFile(id), songs.videoFile(id)));
+            } else {
+                // Los archivos se volvieron a comprobar con otra fecha de carpeta: no sirven para esta entrada.
+                entries.add(new LibraryIndex.Entry(folderName, stamp.getValue(), songs.metadata(id)));
             }
         }
-        return null;
+        libraryIndex.save(libraryRoot, entries);
     }
 
-    private String extractBackgroundFromOsuFile(File osuFile) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(osuFile), StandardCharsets.UTF_8))) {
-            String line;
-            boolean inEventsSection = false;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.equals("[Events]")) inEventsSection = true;
-                else if (inEventsSection && line.startsWith("0,")) {
-                    String[] parts = line.split(",");
-                    if (parts.length >= 3) return parts[2].replaceAll("\"", "");
-                }
+    /**
+     * Vuelve a leer las carpetas indicadas de la biblioteca actual. No modifica el estado,
+     * así que puede llamarse desde un hilo en segundo plano. Las carpetas que ya no existen
+     * se devuelven con valor null.
+     */
+    public Map<String, LibraryIndex.Entry> rescanFolders(Collection<String> folderNames) {
+        File root = libraryRoot;
+        Map<String, LibraryIndex.Entry> result = new HashMap<>();
+        if (root == null) return result;
+        for (String folderName : folderNames) {
+            File beatmapFolder = new File(root, folderName);
+            boolean exists = OszCache.isArchive(beatmapFolder) ? beatmapFolder.isFile() : beatmapFolder.isDirectory();
+            result.put(folderName, exists ? scanBeatmapFolder(beatmapFolder) : null);
+        }
+        return result;
+    }
+
+    /**
+     * Aplica el resultado de {@link #rescanFolders} y devuelve qué canciones han aparecido y desaparecido.
+     * Las canciones nuevas se añaden al final; si se borra una canción que ocultaba un duplicado
+     * de otra carpeta, ese duplicado ocupa su lugar.
+     */
+    public LibraryDelta applyFolderChanges(Map<String, LibraryIndex.Entry> changes) {
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        if (libraryRoot == null || changes.isEmpty()) return new LibraryDelta(added, removed);
+
+        for (Map.Entry<String, LibraryIndex.Entry> change : changes.entrySet()) {
+            String folderName = change.getKey();
+            LibraryIndex.Entry entry = change.getValue();
+            OsuFileParser.BeatmapMetadata meta = entry != null ? entry.metadata() : null;
+
+            shadowedFolders.remove(folderName);
+            hashedFolders.remove(folderName);
+            if (entry == null) folderStamps.remove(folderName);
+            else folderStamps.put(folderName, entry.lastModified());
+
+            Integer previousId = folderIds.remove(folderName);
+            String previousSong = previousId != null ? songs.name(previousId) : null;
+
+            if (previousSong != null && meta != null && previousSong.equals(meta.displayName())) {
+                // Misma canción: se actualiza en su sitio sin cambiar el orden.
+                songs.set(previousId, folderName, meta);
+                songs.setMedia(previousId, entry.coverFile(), entry.videoFile(), entry.lastModified());
+                folderIds.put(folderName, previousId);
+                continue;
+            }
+            if (previousSong != null) {
+                songs.remove(previousId);
+                if (!promoteDuplicate(previousSong)) removed.add(previousSong);
+            }
+            if (entry != null && putSong(entry)) {
+                if (!removed.remove(meta.displayName())) added.add(meta.displayName());
             }
-        } catch (IOException e) {
-            System.err.println("Error leyendo archivo " + osuFile.getAbsolutePath() + ": " + e.getMessage());
         }
-        return null;
+
+        saveIndex();
+        return new LibraryDelta(added, removed);
     }
 
-    public String getVideoPath(String songName) {
-        String baseFolder = getSongBaseFolder(songName);
-        if (baseFolder == null) return null;
+    private boolean promoteDuplicate(String songName) {
+        for (LibraryIndex.Entry candidate : shadowedFolders.values()) {
+            if (songName.equals(candidate.metadata().displayName())) {
+                shadowedFolders.remove(candidate.folderName());
+                return putSong(candidate);
+            }
+        }
+        return false;
+    }
 
-        File folder = new File(baseFolder);
-        File[] videoFiles = folder.listFiles((dir, name) -> name.toLowerCase().endsWith(".mp4"));
-        return (videoFiles != null && videoFiles.length > 0) ? videoFiles[0].getAbsolutePath() : null;
+    /**
+     * Carpetas de la biblioteca de las que aún no se conoce el hash de sus .osu.
+     */
+    public List<String> getUnhashedFolders() {
+        List<String> result = new ArrayList<>();
+        for (String folderName : folderStamps.keySet()) {
+            boolean hasSong = folderIds.containsKey(folderName) || shadowedFolders.containsKey(folderName);
+            if (hasSong && !hashedFolders.contains(folderName)) result.add(folderName);
+        }
+        return result;
     }
 
-    public Image getStoryboardImage(String songName) {
-        String baseFolder = getSongBaseFolder(songName);
-        if (baseFolder == null) return null;
+    /**
+     * Calcula el MD5 de todos los .osu de las carpetas indicadas (o de los .osz). No modifica el estado,
+     * así que puede llamarse desde un hilo en segundo plano; el resultado se aplica con {@link #addBeatmapHashes}.
+     */
+    public Map<String, String> hashBeatmapFolders(List<String> folderNames) {
+        File root = libraryRoot;
+        Map<String, String> hashes = new HashMap<>();
+        if (root == null || folderNames.isEmpty()) return hashes;
+
+        File[] folders = new File[folderNames.size()];
+        for (int i = 0; i < folders.length; i++) folders[i] = new File(root, folderNames.get(i));
+        List<List<String>> perFolder = new LibraryScanner(scanParallelism).parseFolders(folders, MusicManager::hashOsuFiles);
+        for (int i = 0; i < folders.length; i++) {
+            List<String> folderHashes = perFolder.get(i);
+            if (folderHashes == null) continue;
+            for (String hash : folderHashes) hashes.putIfAbsent(hash, folderNames.get(i));
+        }
+        return hashes;
+    }
 
-        File storyboardFile = new File(baseFolder, "storyboard.png");
-        if (storyboardFile.exists()) return new Image(storyboardFile.toURI().toString());
-        return null;
+    /**
+     * Añade hashes al índice y da por calculadas las carpetas indicadas y las que aparecen en los hashes.
+     */
+    public void addBeatmapHashes(Map<String, String> hashes, Collection<String> folderNames) {
+        for (Map.Entry<String, String> hash : hashes.entrySet()) {
+            beatmapHashes.put(hash.getKey().toLowerCase(), hash.getValue());
+            hashedFolders.add(hash.getValue());
+        }
+        hashedFolders.addAll(folderNames);
     }
 
-    private SongMetadata parseOsuFile(File osuFile) {
-        String title = null, artist = null, audioFilename = null;
+    /**
+     * Canciones de la biblioteca correspondientes a los hashes de .osu indicados, sin repetir y en orden.
+     * Los hashes que no están en la biblioteca se ignoran.
+     */
+    public List<String> songsForHashes(List<String> hashes) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String hash : hashes) {
+            String folderName = beatmapHashes.get(hash.toLowerCase());
+            if (folderName == null) continue;
+            Integer id = folderIds.get(folderName);
+            if (id != null) {
+                result.add(songs.name(id));
+                continue;
+            }
+            // Carpeta duplicada: la canción es la de la carpeta que ocupa ese nombre.
+            LibraryIndex.Entry shadowed = shadowedFolders.get(folderName);
+            String songName = shadowed != null ? canonicalSongName(shadowed.metadata().displayName()) : null;
+            if (songName != null) result.add(songName);
+        }
+        return new ArrayList<>(result);
+    }
 
-        Pattern titlePattern = Pattern.compile("^Title:(.*)$", Pattern.CASE_INSENSITIVE);
-        Pattern artistPattern = Pattern.compile("^Artist:(.*)$", Pattern.CASE_INSENSITIVE);
-        Pattern audioPattern = Pattern.compile("^AudioFilename:(.*)$", Pattern.CASE_INSENSITIVE);
+    private static List<String> hashOsuFiles(File beatmapFolder) {
+        List<String> hashes = new ArrayList<>();
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            if (OszCache.isArchive(beatmapFolder)) {
+                try (ZipFile zip = OszCache.open(beatmapFolder)) {
+                    for (String entryName : OszCache.entryNames(zip)) {
+                        if (!entryName.toLowerCase().endsWith(".osu")) continue;
+                        try (InputStream in = zip.getInputStream(zip.getEntry(entryName))) {
+                            hashes.add(HexFormat.of().formatHex(md5.digest(in.readAllBytes())));
+                        }
+                    }
+                }
+            } else {
+                File[] osuFiles = beatmapFolder.listFiles((dir, name) -> name.toLowerCase().endsWith(".osu"));
+                if (osuFiles == null) return hashes;
+                for (File osuFile : osuFiles) {
+                    hashes.add(HexFormat.of().formatHex(md5.digest(Files.readAllBytes(osuFile.toPath()))));
+                }
+            }
+        } catch (IOException | NoSuchAlgorithmException e) {
+            System.err.println("No se pudieron calcular los hashes de " + beatmapFolder.getAbsolutePath() + ": " + e.getMessage());
+        }
+        return hashes;
+    }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(osuFile), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                Matcher mTitle = titlePattern.matcher(line);
-                Matcher mArtist = artistPattern.matcher(line);
-                Matcher mAudio = audioPattern.matcher(line);
+    public File getLibraryRoot() {
+        return libraryRoot;
+    }
 
-                if (mTitle.find()) title = mTitle.group(1).trim();
-                if (mArtist.find()) artist = mArtist.group(1).trim();
-                if (mAudio.find()) audioFilename = mAudio.group(1).trim();
+    /**
+     * Lee una carpeta de beatmap con un único listado: de él salen los .osu, y con él se comprueba
+     * que existan el audio, el fondo y el vídeo sin consultar cada archivo por separado.
+     */
+    private LibraryIndex.Entry scanBeatmapFolder(File beatmapFolder) {
+        if (OszCache.isArchive(beatmapFolder)) return scanArchive(beatmapFolder);
+        long lastModified = beatmapFolder.lastModified();
+        String[] fileNames = beatmapFolder.list();
+        if (fileNames == null) return new LibraryIndex.Entry(beatmapFolder.getName(), lastModified, null);
+
+        for (String fileName : fileNames) {
+            if (!fileName.toLowerCase().endsWith(".osu")) continue;
+            OsuFileParser.BeatmapMetadata meta = OsuFileParser.parse(new File(beatmapFolder, fileName), readBpm);
+            if (meta != null && meta.isPlayable() && findFile(beatmapFolder, fileNames, meta.audioFilename()) != null) {
+                MediaFiles media = resolveMedia(beatmapFolder, fileNames, meta.background(), meta.video());
+                return new LibraryIndex.Entry(beatmapFolder.getName(), lastModified, meta, media.cover(), media.video());
+            }
+        }
+        return new LibraryIndex.Entry(beatmapFolder.getName(), lastModified, null);
+    }
 
-                if (title != null && artist != null && audioFilename != null) break;
+    /**
+     * Igual que {@link #scanBeatmapFolder} para un .osz sin extraer: el listado es el directorio central del zip
+     * y los .osu se descomprimen solo hasta su cabecera.
+     */
+    private LibraryIndex.Entry scanArchive(File archive) {
+        long lastModified = archive.lastModified();
+        try (ZipFile zip = OszCache.open(archive)) {
+            String[] entryNames = OszCache.entryNames(zip);
+            for (String entryName : entryNames) {
+                if (!entryName.toLowerCase().endsWith(".osu")) continue;
+                OsuFileParser.BeatmapMetadata meta = OsuFileParser.parse(zip, zip.getEntry(entryName), readBpm);
+                if (meta != null && meta.isPlayable() && findFile(archive, entryNames, meta.audioFilename()) != null) {
+                    MediaFiles media = resolveMedia(archive, entryNames, meta.background(), meta.video());
+                    return new LibraryIndex.Entry(archive.getName(), lastModified, meta, media.cover(), media.video());
+                }
             }
         } catch (IOException e) {
-            System.err.println("Error leyendo archivo " + osuFile.getAbsolutePath() + ": " + e.getMessage());
+            System.err.println("No se pudo leer " + archive.getAbsolutePath() + ": " + e.getMessage());
         }
+        return new LibraryIndex.Entry(archive.getName(), lastModified, null);
+    }
 
-        return (title != null && artist != null && audioFilename != null) ? new SongMetadata(title, artist, audioFilename) : null;
-    }
-
-    private List<String> parseTags(File osuFile) {
-        List<String> tags = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(osuFile), StandardCharsets.UTF_8))) {
-            String line;
-            boolean inMetadataSection = false;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.equals("[Metadata]")) inMetadataSection = true;
-                else if (inMetadataSection) {
-                    if (line.startsWith("Tags:")) {
-                        String[] splitTags = line.substring(5).trim().split("\\s+");
-                        Collections.addAll(tags, splitTags);
-                        break;
-                    } else if (line.startsWith("[") && line.endsWith("]")) break;
+    private static String[] listBeatmapFiles(File beatmapFolder) {
+        return OszCache.isArchive(beatmapFolder) ? OszCache.list(beatmapFolder) : beatmapFolder.list();
+    }
+
+    private record MediaFiles(String cover, String video) {}
+
+    /**
+     * Fondo y vídeo que existen realmente en la carpeta. Si el vídeo declarado no está,
+     * se usa el primer .mp4 de la carpeta.
+     */
+    private static MediaFiles resolveMedia(File beatmapFolder, String[] fileNames, String declaredBackground, String declaredVideo) {
+        String cover = findFile(beatmapFolder, fileNames, declaredBackground);
+        String video = findFile(beatmapFolder, fileNames, declaredVideo);
+        if (video == null) {
+            for (String fileName : fileNames) {
+                if (fileName.toLowerCase().endsWith(".mp4")) {
+                    video = fileName;
+                    break;
                 }
             }
-        } catch (IOException e) {
-            System.err.println("Error leyendo archivo " + osuFile.getAbsolutePath() + ": " + e.getMessage());
         }
-        return tags;
-    }
-
-    private List<String> parseCreators(File osuFile) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(osuFile), StandardCharsets.UTF_8))) {
-            String line;
-            boolean inMetadataSection = false;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.equals("[Metadata]")) inMetadataSection = true;
-                else if (inMetadataSection) {
-                    if (line.startsWith("Creator:")) {
-                        String creator = line.substring(8).trim();
-                        return creator.isEmpty() ? Collections.emptyList() : Collections.singletonList(creator);
-                    } else if (line.startsWith("[") && line.endsWith("]")) break;
+        return new MediaFiles(cover, video);
+    }
+
+    /**
+     * Busca un archivo declarado en el .osu dentro del listado de la carpeta, sin distinguir mayúsculas
+     * (osu! se usa sobre todo en Windows). En una carpeta, las rutas con subcarpetas se comprueban en disco;
+     * en un .osz el listado ya contiene las rutas completas.
+     */
+    private static String findFile(File beatmapFolder, String[] fileNames, String relativePath) {
+        if (relativePath == null || relativePath.isEmpty()) return null;
+        boolean archive = OszCache.isArchive(beatmapFolder);
+        if (!archive && (relativePath.indexOf('/') >= 0 || relativePath.indexOf('\\') >= 0)) {
+            return new File(beatmapFolder, relativePath).exists() ? relativePath : null;
+        }
+        String wanted = archive ? relativePath.replace('\\', '/') : relativePath;
+        for (String fileName : fileNames) {
+            if (fileName.equalsIgnoreCase(wanted)) return fileName;
+        }
+        return null;
+    }
+
+    /**
+     * Copia de lo que hace falta para encontrar los archivos de una canción. Se toma en el hilo de JavaFX y
+     * se usa en otro hilo (extraer de un .osz tarda), que así no lee la tabla mientras se fusiona un escaneo.
+     * background y video son los declarados en el .osu; coverFile y videoFile, los que existían en la
+     * carpeta cuando su fecha de modificación era mediaStamp.
+     */
+    public record MediaSource(String songName, File beatmapFolder, String audioFile, String background, String video,
+                              String coverFile, String videoFile, long mediaStamp) {}
+
+    /** En el hilo de JavaFX. Devuelve null si la canción no está en la biblioteca. */
+    public MediaSource getMediaSource(String songName) {
+        int id = songs.idOf(songName);
+        if (id < 0) return null;
+        return new MediaSource(songs.name(id), new File(libraryRoot, songs.folder(id)), songs.audioFile(id),
+                songs.background(id), songs.video(id), songs.coverFile(id), songs.videoFile(id), songs.mediaStamp(id));
+    }
+
+    /**
+     * En cualquier hilo: devuelve source con el fondo y el vídeo al día. Solo se vuelve a listar la carpeta
+     * si su fecha de modificación ha cambiado desde la última comprobación; lo encontrado se guarda en la
+     * biblioteca con {@link #storeMedia}.
+     */
+    public static MediaSource refreshMedia(MediaSource source) {
+        File beatmapFolder = source.beatmapFolder();
+        long lastModified = beatmapFolder.lastModified();
+        if (lastModified == source.mediaStamp()) return source;
+
+        String background = source.background();
+        String video = source.video();
+        String[] fileNames = listBeatmapFiles(beatmapFolder);
+        MediaFiles media = new MediaFiles(null, null);
+        if (fileNames != null) {
+            if (background == null && video == null && !OszCache.isArchive(beatmapFolder)) {
+                OsuFileParser.BeatmapMetadata declared = readDeclaredMedia(source.songName(), beatmapFolder, fileNames);
+                if (declared != null) {
+                    background = declared.background();
+                    video = declared.video();
                 }
             }
-        } catch (IOException e) {
-            System.err.println("Error leyendo archivo " + osuFile.getAbsolutePath() + ": " + e.getMessage());
+            media = resolveMedia(beatmapFolder, fileNames, background, video);
         }
-        return Collections.emptyList();
+        return new MediaSource(source.songName(), beatmapFolder, source.audioFile(), background, video,
+                media.cover(), media.video(), lastModified);
+    }
+
+    /**
+     * Las canciones importadas del osu!.db no traen fondo ni vídeo: se leen del .osu de la misma canción.
+     */
+    private static OsuFileParser.BeatmapMetadata readDeclaredMedia(String songName, File beatmapFolder, String[] fileNames) {
+        for (String fileName : fileNames) {
+            if (!fileName.toLowerCase().endsWith(".osu")) continue;
+            OsuFileParser.BeatmapMetadata meta = OsuFileParser.parse(new File(beatmapFolder, fileName), false);
+            if (meta != null && songName.equals(meta.displayName())) return meta;
+        }
+        return null;
+    }
+
+    /**
+     * En el hilo de JavaFX: guarda el fondo y el vídeo que ha encontrado {@link #refreshMedia}, si la canción
+     * sigue en la misma carpeta.
+     */
+    public void storeMedia(MediaSource media) {
+        int id = songs.idOf(media.songName());
+        if (id < 0 || songs.mediaStamp(id) == media.mediaStamp()) return;
+        if (!new File(libraryRoot, songs.folder(id)).equals(media.beatmapFolder())) return;
+        songs.setDeclaredMedia(id, media.background(), media.video());
+        songs.setMedia(id, media.coverFile(), media.videoFile(), media.mediaStamp());
+    }
+
+    /**
+     * En cualquier hilo: ruta en disco de un archivo del beatmap, o null si no lo hay. Si la canción está en
+     * un .osz, se extrae a la caché.
+     */
+    public String getFilePath(MediaSource source, String relativePath) {
+        if (relativePath == null) return null;
+        File beatmapFolder = source.beatmapFolder();
+        if (!OszCache.isArchive(beatmapFolder)) return new File(beatmapFolder, relativePath).getAbsolutePath();
+        File extracted = oszCache.extract(beatmapFolder, relativePath);
+        return extracted != null ? extracted.getAbsolutePath() : null;
+    }
+
+    /**
+     * Número de hilos usados al escanear la carpeta de canciones. Con 1 el escaneo es secuencial.
+     */
+    public void setScanParallelism(int parallelism) {
+        this.scanParallelism = Math.max(1, parallelism);
+    }
+
+    public int getScanParallelism() {
+        return scanParallelism;
+    }
+
+    /**
+     * Si los escaneos calculan el BPM leyendo [TimingPoints].
+     */
+    public void setReadBpm(boolean readBpm) {
+        this.readBpm = readBpm;
+    }
+
+    /**
+     * Si los escaneos importan primero el osu!.db de la instalación (la carpeta que contiene Songs).
+     */
+    public void setUseOsuDb(boolean useOsuDb) {
+        this.useOsuDb = useOsuDb;
+    }
+
+    /**
+     * Cómo se normaliza el texto al buscar: quitar acentos y unificar caracteres de ancho completo.
+     * Si cambia, se recalculan las claves de búsqueda de toda la biblioteca.
+     */
+    public void setSearchNormalization(boolean stripAccents, boolean foldWidth) {
+        songs.setSearchNormalization(new SearchIndex.Normalization(stripAccents, foldWidth));
+    }
+
+    public boolean isReadBpm() {
+        return readBpm;
+    }
+
+    public LibraryScanner.ScanStats getLastScanStats() {
+        return lastScanStats;
+    }
+
+    /**
+     * Nombres de todas las canciones, en orden de biblioteca. Es una vista: refleja los cambios posteriores.
+     */
+    public Set<String> getSongNames() {
+        return Collections.unmodifiableSet(songs.nameSet());
+    }
+
+    /**
+     * Devuelve la instancia de nombre que guarda la biblioteca para este texto, o null si no existe.
+     * Sirve para que las playlists compartan los mismos String en lugar de guardar copias.
+     */
+    public String canonicalSongName(String songName) {
+        int id = songs.idOf(songName);
+        return id >= 0 ? songs.name(id) : null;
+    }
+
+    /** Si la canción está en la biblioteca, sin extraer nada de un .osz. */
+    public boolean hasSong(String songName) {
+        return songs.idOf(songName) >= 0;
+    }
+
+    /**
+     * Marca la canción que se reproduce: si está en un .osz, lo que se extraiga de él no se descarta de la
+     * caché hasta que se marque otra.
+     */
+    public void setCurrentSong(String songName) {
+        int id = songs.idOf(songName);
+        File beatmapFolder = id >= 0 ? new File(libraryRoot, songs.folder(id)) : null;
+        oszCache.pin(beatmapFolder != null && OszCache.isArchive(beatmapFolder) ? beatmapFolder : null);
+    }
+
+    /**
+     * Tamaño máximo de la caché donde se extraen el audio, los fondos y los vídeos de los .osz.
+     */
+    public void setArchiveCacheBytes(long maxBytes) {
+        this.oszCache = new OszCache(maxBytes);
+    }
+
+    public void setLastFolderPath(String path) {
+        this.lastFolderPath = path;
+    }
+
+    public String getLastFolderPath() {
+        return lastFolderPath;
+    }
+
+    public String getSongBaseFolder(String songName) {
+        int id = songs.idOf(songName);
+        return id >= 0 ? new File(libraryRoot, songs.folder(id)).getAbsolutePath() : null;
+    }
+
+    public Image getStoryboardImage(String songName) {
+        String baseFolder = getSongBaseFolder(songName);
+        if (baseFolder == null) return null;
+
+        File storyboardFile = new File(baseFolder, "storyboard.png");
+        if (storyboardFile.exists()) return new Image(storyboardFile.toURI().toString());
+        return null;
+    }
+
+    public OsuFileParser.BeatmapMetadata getMetadata(String songName) {
+        int id = songs.idOf(songName);
+        return id >= 0 ? songs.metadata(id) : null;
     }
 
     public List<String> getTags(String songName) {
-        return songTags.getOrDefault(songName, Collections.emptyList());
+        int id = songs.idOf(songName);
+        return id >= 0 ? songs.tags(id) : Collections.emptyList();
     }
 
     public List<String> getCreators(String songName) {
-        return songCreators.getOrDefault(songName, Collections.emptyList());
+        int id = songs.idOf(songName);
+        return id >= 0 ? songs.creators(id) : Collections.emptyList();
+    }
+
+    public String getTitleUnicode(String songName) {
+        int id = songs.idOf(songName);
+        return id >= 0 ? songs.titleUnicode(id) : null;
+    }
+
+    public String getArtistUnicode(String songName) {
+        int id = songs.idOf(songName);
+        return id >= 0 ? songs.artistUnicode(id) : null;
+    }
+
+    public String getSource(String songName) {
+        int id = songs.idOf(songName);
+        return id >= 0 ? songs.source(id) : null;
+    }
+
+    /**
+     * Valor numérico de un campo (BPM, tiempo de preview, ID del set), o NaN si la canción no lo tiene.
+     */
+    public double getNumericField(String songName, SongField field) {
+        int id = songs.idOf(songName);
+        return id >= 0 ? songs.numericValue(id, field) : Double.NaN;
+    }
+
+    /**
+     * Todas las canciones ordenadas por un campo. Las que no tienen valor van al final.
+     */
+    public List<String> getSongsSortedBy(SongField field, boolean descending) {
+        int[] ids = songs.liveIds();
+        songs.sortIds(ids, field, descending);
+        return namesOf(ids);
+    }
+
+    private List<String> namesOf(int[] ids) {
+        String[] names = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) names[i] = songs.name(ids[i]);
+        return Arrays.asList(names);
     }
 
     public List<String> searchSongs(String query) {
-        if (query == null || query.isEmpty()) return new ArrayList<>(songs.keySet());
+        return new ArrayList<>(findSongs(query));
+    }
 
-        String lowerQuery = query.toLowerCase();
-        List<String> results = new ArrayList<>();
+    /**
+     * Canciones que cumplen la consulta, en orden de biblioteca. El texto libre se busca sin distinguir
+     * mayúsculas ni (según la configuración) acentos o anchos en el nombre, los nombres originales, la
+     * fuente, el creador y los tags; además se admiten filtros como artist:, creator:, tag: o bpm&gt;180
+     * (ver {@link SongQuery}). Devuelve una vista con contains en O(1). Se puede llamar desde otro hilo;
+     * la vista se usa en el de JavaFX.
+     */
+    public Set<String> findSongs(String query) {
+        if (query == null || query.isBlank()) return songs.nameSet();
+        return songs.nameSet(songs.query(query.trim()));
+    }
 
-        for (String name : songs.keySet()) {
-            if (name.toLowerCase().contains(lowerQuery)) {
-                results.add(name);
-                continue;
-            }
-            for (String tag : songTags.getOrDefault(name, Collections.emptyList())) {
-                if (tag.toLowerCase().contains(lowerQuery)) {
-                    results.add(name);
-                    break;
-                }
-            }
+    /**
+     * Un valor de tag o creador con el número de canciones que lo tienen. filter es el filtro de búsqueda
+     * que selecciona esas canciones (por ejemplo tag:tech).
+     */
+    public record Facet(String label, String filter, int count) {}
+
+    /** Tags presentes en las canciones indicadas, de más a menos canciones y como mucho limit. */
+    public List<Facet> getTagFacets(Collection<String> songNames, int limit) {
+        return facets(false, songNames, limit);
+    }
+
+    /** Creadores presentes en las canciones indicadas, de más a menos canciones y como mucho limit. */
+    public List<Facet> getCreatorFacets(Collection<String> songNames, int limit) {
+        return facets(true, songNames, limit);
+    }
+
+    private List<Facet> facets(boolean creators, Collection<String> songNames, int limit) {
+        String field = creators ? "creator:" : "tag:";
+        List<Facet> facets = new ArrayList<>();
+        for (ValueIndex.Count count : songs.facets(creators, songs.idsOf(songNames), limit)) {
+            facets.add(new Facet(count.label(), field + SongQuery.quote(count.label()), count.count()));
         }
-        return results;
+        return facets;
+    }
+
+    /**
+     * Búsqueda que tolera errores de escritura ("camelia" encuentra "Camellia"): como mucho limit canciones,
+     * de mejor a peor coincidencia. Se puede llamar desde otro hilo.
+     */
+    public List<String> fuzzySearch(String query, int limit) {
+        String normalized = songs.normalizeQuery(query);
+        if (normalized.isEmpty()) return List.of();
+        List<String> names = new ArrayList<>(limit);
+        for (String name : songs.names(songs.fuzzySearch(normalized, limit))) {
+            if (name != null) names.add(name);
+        }
+        return names;
+    }
+
+    /** Si la canción cumple la consulta, con los mismos criterios que {@link #findSongs(String)}. */
+    public boolean matchesSearch(String songName, String query) {
+        if (query == null || query.isBlank()) return true;
+        return songs.matches(songs.idOf(songName), query.trim());
     }
 
     // Delegación historial
@@ -243,16 +812,4 @@ public class MusicManager {
     public int getHistoryIndex() { return historyManager.getIndex(); }
     public void setHistoryIndex(int index) { historyManager.setIndex(index); }
     public void setHistory(List<String> history, int index) { historyManager.setHistory(history, index); }
-
-    private static class SongMetadata {
-        final String title;
-        final String artist;
-        final String audioFilename;
-
-        SongMetadata(String title, String artist, String audioFilename) {
-            this.title = title;
-            this.artist = artist;
-            this.audioFilename = audioFilename;
-        }
-    }
 }
@@ -0,0 +1,192 @@
+package com.osuplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lector del osu!.db de osu! stable, que ya contiene los metadatos de todos los beatmaps instalados.
+ * Importarlo evita leer un .osu por carpeta. El archivo se lee entero a memoria y se recorre una sola vez;
+ * no se mapea porque en Windows un archivo mapeado no se puede reemplazar hasta que el GC libera el mapeo,
+ * y osu! lo reescribe al cerrar. El formato está descrito en
+ * https://github.com/ppy/osu/wiki/Legacy-database-file-structure.
+ */
+public final class OsuDbReader {
+
+    private static final String DB_FILE = "osu!.db";
+
+    /** Desde esta versión AR/CS/HP/OD son Single y se guardan las estrellas. */
+    private static final int VERSION_FLOAT_DIFFICULTY = 20140609;
+    /** Desde esta versión cada beatmap ya no empieza con su tamaño en bytes. */
+    private static final int VERSION_NO_ENTRY_SIZE = 20191106;
+    /** Desde esta versión las estrellas son pares Int-Single en lugar de Int-Double. */
+    private static final int VERSION_FLOAT_STAR_RATINGS = 20250107;
+
+    private static final byte STRING_PRESENT = 0x0b;
+
+    private OsuDbReader() {}
+
+    /**
+     * Una dificultad del osu!.db. folderName es relativo a la carpeta Songs; md5 es el hash del .osu,
+     * que es como lo referencian collection.db y las puntuaciones.
+     */
+    public record Beatmap(String folderName, String osuFileName, String md5, OsuFileParser.BeatmapMetadata metadata) {}
+
+    /**
+     * Devuelve el osu!.db de la instalación a la que pertenece la carpeta Songs, o null si no existe.
+     */
+    public static File locate(File songsFolder) {
+        File parent = songsFolder.getAbsoluteFile().getParentFile();
+        if (parent == null) return null;
+        File db = new File(parent, DB_FILE);
+        return db.isFile() ? db : null;
+    }
+
+    /**
+     * Lee todas las dificultades, en el orden del archivo. Los beatmaps .osz2 no se incluyen porque
+     * no tienen carpeta en disco.
+     */
+    public static List<Beatmap> read(File dbFile) throws IOException {
+        return read(ByteBuffer.wrap(Files.readAllBytes(dbFile.toPath())).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    static List<Beatmap> read(ByteBuffer in) throws IOException {
+        try {
+            int version = in.getInt();
+            in.getInt(); // número de carpetas
+            in.get(); // cuenta desbloqueada
+            in.getLong(); // fecha de desbloqueo
+            skipString(in); // nombre del jugador
+            int count = in.getInt();
+            if (count < 0) throw new IOException("Número de beatmaps no válido: " + count);
+
+            List<Beatmap> beatmaps = new ArrayList<>(Math.min(count, 1 << 16));
+            for (int i = 0; i < count; i++) {
+                Beatmap beatmap = readBeatmap(in, version);
+                if (beatmap != null) beatmaps.add(beatmap);
+            }
+            return beatmaps;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("osu!.db incompleto o dañado", e);
+        }
+    }
+
+    private static Beatmap readBeatmap(ByteBuffer in, int version) throws IOException {
+        if (version < VERSION_NO_ENTRY_SIZE) in.getInt();
+        String artist = readString(in);
+        String artistUnicode = readString(in);
+        String title = readString(in);
+        String titleUnicode = readString(in);
+        String creator = readString(in);
+        skipString(in); // dificultad
+        String audioFilename = readString(in);
+        String md5 = readString(in);
+        String osuFileName = readString(in);
+
+        in.get(); // estado de ranked
+        skip(in, 3 * Short.BYTES); // círculos, sliders, spinners
+        in.getLong(); // última modificación
+        skip(in, version < VERSION_FLOAT_DIFFICULTY ? 4 : 4 * Float.BYTES); // AR, CS, HP, OD
+        in.getDouble(); // velocidad de slider
+        if (version >= VERSION_FLOAT_DIFFICULTY) {
+            int pairSize = version >= VERSION_FLOAT_STAR_RATINGS ? 1 + Integer.BYTES + 1 + Float.BYTES : 1 + Integer.BYTES + 1 + Double.BYTES;
+            for (int mode = 0; mode < 4; mode++) {
+                int pairs = in.getInt();
+                if (pairs < 0) throw new IOException("Número de estrellas no válido: " + pairs);
+                skip(in, (long) pairs * pairSize);
+            }
+        }
+        in.getInt(); // tiempo de drenaje
+        in.getInt(); // duración total
+        int previewTime = in.getInt();
+
+        int timingCount = in.getInt();
+        if (timingCount < 0) throw new IOException("Número de puntos de tiempo no válido: " + timingCount);
+        double[] beatLengths = new double[timingCount];
+        double[] times = new double[timingCount];
+        boolean[] uninherited = new boolean[timingCount];
+        for (int i = 0; i < timingCount; i++) {
+            beatLengths[i] = in.getDouble();
+            times[i] = in.getDouble();
+            uninherited[i] = in.get() != 0;
+        }
+
+        in.getInt(); // ID de la dificultad
+        int beatmapSetId = in.getInt();
+        in.getInt(); // ID del hilo del foro
+        skip(in, 4); // notas por modo
+        in.getShort(); // offset local
+        in.getFloat(); // stack leniency
+        in.get(); // modo de juego
+        String source = readString(in);
+        String tags = readString(in);
+        in.getShort(); // offset online
+        skipString(in); // fuente del título
+        in.get(); // sin jugar
+        in.getLong(); // última vez jugado
+        boolean osz2 = in.get() != 0;
+        String folderName = readString(in);
+        in.getLong(); // última comprobación con el servidor
+        skip(in, 5); // ignorar sonidos, skin, storyboard, vídeo y override visual
+        if (version < VERSION_FLOAT_DIFFICULTY) in.getShort();
+        in.getInt(); // última modificación
+        in.get(); // velocidad de scroll de mania
+
+        if (osz2 || folderName == null || folderName.isEmpty()) return null;
+        OsuFileParser.BeatmapMetadata metadata = new OsuFileParser.BeatmapMetadata(
+                emptyToNull(title), emptyToNull(artist), emptyToNull(audioFilename), creator,
+                OsuFileParser.splitTags(tags), null, null,
+                emptyToNull(titleUnicode), emptyToNull(artistUnicode), emptyToNull(source),
+                beatmapSetId > 0 ? beatmapSetId : -1, previewTime,
+                OsuFileParser.dominantBpm(times, beatLengths, uninherited, timingCount));
+        return new Beatmap(folderName, osuFileName, md5, metadata);
+    }
+
+    /**
+     * Cadena de osu!: 0x00 si no hay valor, o 0x0b seguido de la longitud en ULEB128 y los bytes UTF-8.
+     */
+    static String readString(ByteBuffer in) throws IOException {
+        int length = stringLength(in);
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer in) throws IOException {
+        int length = stringLength(in);
+        if (length > 0) skip(in, length);
+    }
+
+    private static int stringLength(ByteBuffer in) throws IOException {
+        byte marker = in.get();
+        if (marker == 0) return -1;
+        if (marker != STRING_PRESENT) throw new IOException("Cadena no válida en la posición " + (in.position() - 1));
+
+        long length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            length |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 35);
+        if (length > in.remaining()) throw new IOException("Cadena más larga que el archivo en la posición " + in.position());
+        return (int) length;
+    }
+
+    private static void skip(ByteBuffer in, long bytes) {
+        if (bytes > in.remaining()) throw new BufferUnderflowException();
+        in.position(in.position() + (int) bytes);
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
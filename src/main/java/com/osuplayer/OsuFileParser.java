@@ -0,0 +1,287 @@
+package com.osuplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Lee un archivo .osu en una sola pasada sobre su cabecera (ver {@link OsuHeaderReader}) y se detiene
+ * en cuanto tiene [General], [Metadata] y la línea de fondo de [Events]. El BPM es opcional porque
+ * obliga a leer también [TimingPoints].
+ */
+public final class OsuFileParser {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /** Máximo de bytes de [TimingPoints] que se leen para calcular el BPM. */
+    private static final int TIMING_POINTS_MAX = 64 * 1024;
+    /** Máximo de bytes que se descomprimen de un .osu dentro de un .osz para llegar a [TimingPoints]. */
+    private static final int ARCHIVE_TIMING_PREFIX_MAX = 1024 * 1024;
+
+    private static final byte[] AUDIO_FILENAME = ascii("AudioFilename:");
+    private static final byte[] PREVIEW_TIME = ascii("PreviewTime:");
+    private static final byte[] TITLE = ascii("Title:");
+    private static final byte[] TITLE_UNICODE = ascii("TitleUnicode:");
+    private static final byte[] ARTIST = ascii("Artist:");
+    private static final byte[] ARTIST_UNICODE = ascii("ArtistUnicode:");
+    private static final byte[] CREATOR = ascii("Creator:");
+    private static final byte[] SOURCE = ascii("Source:");
+    private static final byte[] TAGS = ascii("Tags:");
+    private static final byte[] BEATMAP_SET_ID = ascii("BeatmapSetID:");
+    private static final byte[] COMMENT = ascii("//");
+    private static final byte[] BACKGROUND_EVENT = ascii("0,");
+    private static final byte[] VIDEO_EVENT = ascii("Video,");
+    private static final byte[] VIDEO_EVENT_ALIAS = ascii("1,");
+
+    private OsuFileParser() {}
+
+    /**
+     * Metadatos de un beatmap. Los campos de texto que no aparecen en el archivo quedan en null
+     * (o lista vacía en el caso de los tags), beatmapSetId y previewTime en -1, y bpm en 0.
+     * bpm es NaN si no se leyó [TimingPoints].
+     */
+    public record BeatmapMetadata(String title, String artist, String audioFilename, String creator,
+                                  List<String> tags, String background, String video,
+                                  String titleUnicode, String artistUnicode, String source,
+                                  int beatmapSetId, int previewTime, double bpm) {
+
+        public BeatmapMetadata {
+            tags = tags == null ? List.of() : List.copyOf(tags);
+        }
+
+        public boolean isPlayable() {
+            return title != null && artist != null && audioFilename != null;
+        }
+
+        public String displayName() {
+            return artist + " - " + title;
+        }
+
+        public List<String> creators() {
+            return creator == null || creator.isEmpty() ? List.of() : List.of(creator);
+        }
+
+        public BeatmapMetadata withBpm(double bpm) {
+            return new BeatmapMetadata(title, artist, audioFilename, creator, tags, background, video,
+                    titleUnicode, artistUnicode, source, beatmapSetId, previewTime, bpm);
+        }
+    }
+
+    /**
+     * @param readBpm si es true también se lee [TimingPoints] (como mucho {@value #TIMING_POINTS_MAX} bytes)
+     *                para calcular el BPM dominante
+     */
+    public static BeatmapMetadata parse(File osuFile, boolean readBpm) {
+        try (FileChannel channel = FileChannel.open(osuFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = OsuHeaderReader.readHeader(channel, channel.size());
+            BeatmapMetadata meta = parse(header);
+            if (!readBpm || !meta.isPlayable()) return meta;
+            // La cabecera termina donde empieza la primera sección de datos: se busca desde ahí.
+            ByteBuffer timingPoints = OsuHeaderReader.readSection(channel, header.limit(), "TimingPoints", TIMING_POINTS_MAX);
+            return meta.withBpm(timingPoints != null ? dominantBpm(timingPoints) : 0);
+        } catch (IOException e) {
+            System.err.println("Error leyendo archivo " + osuFile.getAbsolutePath() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Lee un .osu dentro de un .osz sin extraerlo: solo se descomprime el principio de la entrada.
+     */
+    public static BeatmapMetadata parse(ZipFile archive, ZipEntry entry, boolean readBpm) {
+        try {
+            BeatmapMetadata meta;
+            try (ReadableByteChannel channel = Channels.newChannel(archive.getInputStream(entry))) {
+                meta = parse(OsuHeaderReader.readHeader(channel, entry.getSize()));
+            }
+            if (!readBpm || !meta.isPlayable()) return meta;
+
+            // Una entrada comprimida no se puede recorrer hacia atrás: se vuelve a leer desde el principio.
+            try (ReadableByteChannel channel = Channels.newChannel(archive.getInputStream(entry))) {
+                ByteBuffer prefix = OsuHeaderReader.readPrefix(channel, ARCHIVE_TIMING_PREFIX_MAX);
+                ByteBuffer timingPoints = OsuHeaderReader.findSection(prefix, "TimingPoints", TIMING_POINTS_MAX);
+                return meta.withBpm(timingPoints != null ? dominantBpm(timingPoints) : 0);
+            }
+        } catch (IOException e) {
+            System.err.println("Error leyendo " + entry.getName() + " en " + archive.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Interpreta las secciones de cabecera ya leídas. Las líneas se recorren sobre los bytes
+     * y solo se decodifican a String los valores que interesan.
+     */
+    static BeatmapMetadata parse(ByteBuffer header) {
+        String title = null, artist = null, audioFilename = null, creator = null, background = null, video = null;
+        String titleUnicode = null, artistUnicode = null, source = null, previewTime = null, beatmapSetId = null;
+        List<String> tags = null;
+
+        for (OsuHeaderReader.Section section : OsuHeaderReader.sections(header)) {
+            int end = section.end();
+            switch (section.name()) {
+                case "General" -> {
+                    for (int pos = section.start(); pos < end && (audioFilename == null || previewTime == null); pos = OsuHeaderReader.lineEnd(header, pos, end) + 1) {
+                        if (audioFilename == null) audioFilename = valueOf(header, pos, end, AUDIO_FILENAME);
+                        if (previewTime == null) previewTime = valueOf(header, pos, end, PREVIEW_TIME);
+                    }
+                }
+                case "Metadata" -> {
+                    for (int pos = section.start(); pos < end; pos = OsuHeaderReader.lineEnd(header, pos, end) + 1) {
+                        if (title == null) title = valueOf(header, pos, end, TITLE);
+                        if (titleUnicode == null) titleUnicode = valueOf(header, pos, end, TITLE_UNICODE);
+                        if (artist == null) artist = valueOf(header, pos, end, ARTIST);
+                        if (artistUnicode == null) artistUnicode = valueOf(header, pos, end, ARTIST_UNICODE);
+                        if (creator == null) creator = valueOf(header, pos, end, CREATOR);
+                        if (source == null) source = valueOf(header, pos, end, SOURCE);
+                        if (beatmapSetId == null) beatmapSetId = valueOf(header, pos, end, BEATMAP_SET_ID);
+                        if (tags == null) {
+                            String rawTags = valueOf(header, pos, end, TAGS);
+                            if (rawTags != null) tags = splitTags(rawTags);
+                        }
+                    }
+                }
+                case "Events" -> {
+                    for (int pos = section.start(); pos < end; pos = OsuHeaderReader.lineEnd(header, pos, end) + 1) {
+                        int lineEnd = OsuHeaderReader.lineEnd(header, pos, end);
+                        int first = OsuHeaderReader.skipBlanks(header, pos, lineEnd);
+                        if (first >= lineEnd || OsuHeaderReader.startsWithIgnoreCase(header, first, lineEnd, COMMENT)) continue;
+
+                        boolean isBackground = OsuHeaderReader.startsWithIgnoreCase(header, first, lineEnd, BACKGROUND_EVENT);
+                        boolean isVideo = OsuHeaderReader.startsWithIgnoreCase(header, first, lineEnd, VIDEO_EVENT)
+                                || OsuHeaderReader.startsWithIgnoreCase(header, first, lineEnd, VIDEO_EVENT_ALIAS);
+                        if (isBackground && background == null) background = eventFilename(OsuHeaderReader.decode(header, first, lineEnd));
+                        else if (isVideo && video == null) video = eventFilename(OsuHeaderReader.decode(header, first, lineEnd));
+                        else if (!isBackground && !isVideo && background != null) break;
+                    }
+                }
+                default -> {}
+            }
+        }
+
+        return new BeatmapMetadata(title, artist, audioFilename, creator, tags, background, video,
+                emptyToNull(titleUnicode), emptyToNull(artistUnicode), emptyToNull(source),
+                parseInt(beatmapSetId), parseInt(previewTime), Double.NaN);
+    }
+
+    /**
+     * Lee los puntos de tiempo de la sección [TimingPoints] y calcula su BPM dominante.
+     */
+    static double dominantBpm(ByteBuffer timingPoints) {
+        int count = 0;
+        double[] times = new double[64];
+        double[] beatLengths = new double[64];
+        boolean[] uninherited = new boolean[64];
+
+        int limit = timingPoints.limit();
+        for (int pos = 0; pos < limit; pos = OsuHeaderReader.lineEnd(timingPoints, pos, limit) + 1) {
+            int lineEnd = OsuHeaderReader.lineEnd(timingPoints, pos, limit);
+            int first = OsuHeaderReader.skipBlanks(timingPoints, pos, lineEnd);
+            if (first >= lineEnd || OsuHeaderReader.startsWithIgnoreCase(timingPoints, first, lineEnd, COMMENT)) continue;
+
+            String[] fields = OsuHeaderReader.decode(timingPoints, first, lineEnd).split(",");
+            if (fields.length < 2) continue;
+            if (count == times.length) {
+                times = Arrays.copyOf(times, count * 2);
+                beatLengths = Arrays.copyOf(beatLengths, count * 2);
+                uninherited = Arrays.copyOf(uninherited, count * 2);
+            }
+            try {
+                times[count] = Double.parseDouble(fields[0].trim());
+                beatLengths[count] = Double.parseDouble(fields[1].trim());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            uninherited[count] = fields.length < 7 || !"0".equals(fields[6].trim());
+            count++;
+        }
+        return dominantBpm(times, beatLengths, uninherited, count);
+    }
+
+    /**
+     * BPM que más tiempo dura en el mapa: cada punto de tiempo no heredado (beatLength positivo) cuenta hasta
+     * el siguiente, y el último hasta el último punto de la lista. Si ninguno tiene duración, el primero.
+     * Devuelve 0 si no hay ningún punto no heredado.
+     */
+    static double dominantBpm(double[] times, double[] beatLengths, boolean[] uninherited, int count) {
+        Map<Double, Double> durations = new HashMap<>();
+        double firstBpm = 0, currentBpm = 0, currentStart = 0, lastTime = 0;
+        boolean hasCurrent = false;
+
+        for (int i = 0; i < count; i++) {
+            lastTime = Math.max(lastTime, times[i]);
+            if (!uninherited[i] || beatLengths[i] <= 0) continue;
+
+            double bpm = Math.round(60000 / beatLengths[i] * 100) / 100.0;
+            if (hasCurrent) durations.merge(currentBpm, times[i] - currentStart, Double::sum);
+            else firstBpm = bpm;
+            currentBpm = bpm;
+            currentStart = times[i];
+            hasCurrent = true;
+        }
+        if (!hasCurrent) return 0;
+        durations.merge(currentBpm, Math.max(0, lastTime - currentStart), Double::sum);
+
+        double dominant = firstBpm;
+        double longest = 0;
+        for (Map.Entry<Double, Double> entry : durations.entrySet()) {
+            if (entry.getValue() > longest) {
+                longest = entry.getValue();
+                dominant = entry.getKey();
+            }
+        }
+        return dominant;
+    }
+
+    static List<String> splitTags(String rawTags) {
+        if (rawTags == null) return null;
+        String trimmed = rawTags.trim();
+        return trimmed.isEmpty() ? List.of() : List.of(WHITESPACE.split(trimmed));
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static int parseInt(String value) {
+        if (value == null || value.isEmpty()) return -1;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Devuelve el valor de la línea que empieza en pos si su clave coincide con key ("Clave:"), o null.
+     */
+    private static String valueOf(ByteBuffer buffer, int pos, int end, byte[] key) {
+        int lineEnd = OsuHeaderReader.lineEnd(buffer, pos, end);
+        int first = OsuHeaderReader.skipBlanks(buffer, pos, lineEnd);
+        if (!OsuHeaderReader.startsWithIgnoreCase(buffer, first, lineEnd, key)) return null;
+        return OsuHeaderReader.decode(buffer, first + key.length, lineEnd);
+    }
+
+    private static String eventFilename(String line) {
+        String[] parts = line.split(",");
+        if (parts.length < 3) return null;
+        String name = parts[2].replace("\"", "").trim();
+        return name.isEmpty() ? null : name;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
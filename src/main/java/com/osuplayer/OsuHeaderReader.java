@@ -0,0 +1,281 @@
+package com.osuplayer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lectura a nivel de bytes de la cabecera de un archivo .osu.
+ * Solo se lee el prefijo del archivo que contiene las secciones de cabecera; [TimingPoints] y
+ * [HitObjects], que suelen ocupar casi todo el archivo, únicamente se leen si se piden con
+ * {@link #readSection}. Las cabeceras de sección se localizan sobre los bytes, sin crear un String por línea.
+ */
+final class OsuHeaderReader {
+
+    private static final int INITIAL_READ = 8 * 1024;
+    private static final int MAX_HEADER = 256 * 1024;
+    /** Bytes que se leen después de [Events] para alcanzar la línea del fondo y del vídeo. */
+    private static final int EVENTS_LOOKAHEAD = 4 * 1024;
+    /** Margen del búfer de {@link #readSection} para la línea de cabecera de la sección. */
+    private static final int SECTION_HEADER_MAX = 1024;
+
+    private static final byte[] EVENTS = "[Events]".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIMING_POINTS = "[TimingPoints]".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HIT_OBJECTS = "[HitObjects]".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<ByteBuffer> SECTION_BUFFER = new ThreadLocal<>();
+
+    private OsuHeaderReader() {}
+
+    /**
+     * Una sección del archivo: name sin corchetes, y el rango [start, end) de su contenido.
+     */
+    record Section(String name, int start, int end) {}
+
+    /**
+     * Lee desde el principio del archivo hasta la primera sección de datos ([TimingPoints] o [HitObjects]),
+     * o hasta que [Events] tenga margen suficiente, con un máximo de {@value #MAX_HEADER} bytes.
+     * El búfer devuelto termina en un salto de línea para no cortar ninguna línea por la mitad.
+     *
+     * @param channel canal situado al principio del archivo (un archivo o una entrada de un .osz)
+     * @param size tamaño total en bytes, o -1 si no se conoce
+     */
+    static ByteBuffer readHeader(ReadableByteChannel channel, long size) throws IOException {
+        if (size < 0) size = Long.MAX_VALUE;
+        int capacity = (int) Math.min(size, INITIAL_READ);
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        int scanned = 0;
+        int eventsAt = -1;
+        boolean endOfStream = false;
+
+        while (true) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    endOfStream = true;
+                    break;
+                }
+            }
+            int limit = buffer.position();
+            boolean complete = endOfStream || limit >= size;
+
+            int lastLine = complete ? limit : lastLineEnd(buffer, limit);
+            int from = lineStart(buffer, scanned);
+            int dataSection = findAny(buffer, from, lastLine, TIMING_POINTS, HIT_OBJECTS);
+            if (dataSection >= 0) return slice(buffer, dataSection);
+            if (eventsAt < 0) eventsAt = findAny(buffer, from, lastLine, EVENTS, null);
+            scanned = lastLine;
+
+            boolean eventsCovered = eventsAt >= 0 && lastLine - eventsAt >= EVENTS_LOOKAHEAD;
+            if (complete || eventsCovered || capacity >= MAX_HEADER) return slice(buffer, lastLine);
+
+            capacity = (int) Math.min(Math.min(size, MAX_HEADER), (long) capacity * 2);
+            ByteBuffer grown = ByteBuffer.allocate(capacity);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+
+    /**
+     * Lee el contenido de una sección concreta (por ejemplo "TimingPoints"), buscándola a partir de from,
+     * hasta la siguiente sección o hasta maxBytes. Devuelve null si el archivo no tiene esa sección.
+     * Se lee por bloques a un búfer propio del hilo que se reutiliza entre archivos, así que el resultado
+     * solo es válido hasta la siguiente llamada desde el mismo hilo.
+     */
+    static ByteBuffer readSection(FileChannel channel, long from, String name, int maxBytes) throws IOException {
+        ByteBuffer buffer = sectionBuffer(maxBytes + SECTION_HEADER_MAX);
+        byte[] header = ("[" + name + "]").getBytes(StandardCharsets.US_ASCII);
+        long size = channel.size();
+        for (long pos = from; pos < size; ) {
+            int limit = readAt(channel, buffer, pos);
+            if (limit == 0) break;
+            boolean complete = pos + limit >= size;
+            int lastLine = complete ? limit : lastLineEnd(buffer, limit);
+            int at = findAny(buffer, 0, lastLine, header, null);
+            if (at >= 0) {
+                // Se vuelve a leer desde la cabecera para tener la sección entera en el búfer.
+                if (at > 0 && !complete) {
+                    limit = readAt(channel, buffer, pos + at);
+                    at = 0;
+                }
+                buffer.limit(limit).position(at);
+                return findSection(buffer.slice(), name, maxBytes);
+            }
+            pos += lastLine > 0 ? lastLine : limit;
+        }
+        return null;
+    }
+
+    private static ByteBuffer sectionBuffer(int capacity) {
+        ByteBuffer buffer = SECTION_BUFFER.get();
+        if (buffer == null || buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocate(capacity);
+            SECTION_BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
+    /** Llena el búfer desde la posición pos del archivo. Devuelve los bytes leídos. */
+    private static int readAt(FileChannel channel, ByteBuffer buffer, long pos) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pos + buffer.position()) < 0) break;
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Igual que {@link #readSection}, pero sobre un archivo ya leído (por ejemplo una entrada de un .osz).
+     */
+    static ByteBuffer findSection(ByteBuffer buffer, String name, int maxBytes) {
+        byte[] header = ("[" + name + "]").getBytes(StandardCharsets.US_ASCII);
+        int limit = buffer.limit();
+        int at = findAny(buffer, 0, limit, header, null);
+        if (at < 0) return null;
+
+        int start = Math.min(lineEnd(buffer, at, limit) + 1, limit);
+        int end = (int) Math.min(limit, (long) start + maxBytes);
+        for (int pos = start; pos < end; pos = lineEnd(buffer, pos, end) + 1) {
+            if (firstNonBlank(buffer, pos, end) == '[') {
+                end = pos;
+                break;
+            }
+        }
+        return buffer.slice(start, end - start);
+    }
+
+    /**
+     * Lee como mucho maxBytes desde el principio del canal.
+     */
+    static ByteBuffer readPrefix(ReadableByteChannel channel, int maxBytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(maxBytes, INITIAL_READ));
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                if (buffer.capacity() >= maxBytes) break;
+                ByteBuffer grown = ByteBuffer.allocate((int) Math.min(maxBytes, (long) buffer.capacity() * 2));
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            if (channel.read(buffer) < 0) break;
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Divide el búfer en secciones recorriendo solo el primer byte significativo de cada línea.
+     */
+    static List<Section> sections(ByteBuffer buffer) {
+        List<Section> sections = new ArrayList<>();
+        int limit = buffer.limit();
+        String current = null;
+        int currentStart = 0;
+
+        for (int pos = 0; pos < limit; ) {
+            int end = lineEnd(buffer, pos, limit);
+            int first = skipBlanks(buffer, pos, end);
+            if (first < end && buffer.get(first) == '[') {
+                int close = trimEnd(buffer, first, end);
+                if (close > first + 1 && buffer.get(close - 1) == ']') {
+                    if (current != null) sections.add(new Section(current, currentStart, pos));
+                    current = decode(buffer, first + 1, close - 1);
+                    currentStart = Math.min(end + 1, limit);
+                }
+            }
+            pos = end + 1;
+        }
+        if (current != null) sections.add(new Section(current, currentStart, limit));
+        return sections;
+    }
+
+    /** Posición del salto de línea que termina la línea que empieza en pos, o limit. */
+    static int lineEnd(ByteBuffer buffer, int pos, int limit) {
+        for (int i = pos; i < limit; i++) {
+            if (buffer.get(i) == '\n') return i;
+        }
+        return limit;
+    }
+
+    static int skipBlanks(ByteBuffer buffer, int pos, int end) {
+        while (pos < end) {
+            byte b = buffer.get(pos);
+            if (b != ' ' && b != '\t' && b != '\r') break;
+            pos++;
+        }
+        return pos;
+    }
+
+    static int trimEnd(ByteBuffer buffer, int start, int end) {
+        while (end > start) {
+            byte b = buffer.get(end - 1);
+            if (b != ' ' && b != '\t' && b != '\r') break;
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Compara un prefijo ASCII sin distinguir mayúsculas.
+     */
+    static boolean startsWithIgnoreCase(ByteBuffer buffer, int pos, int end, byte[] prefix) {
+        if (end - pos < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            int a = buffer.get(pos + i);
+            int b = prefix[i];
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) return false;
+        }
+        return true;
+    }
+
+    static String decode(ByteBuffer buffer, int from, int to) {
+        from = skipBlanks(buffer, from, to);
+        to = trimEnd(buffer, from, to);
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int firstNonBlank(ByteBuffer buffer, int pos, int end) {
+        int first = skipBlanks(buffer, pos, lineEnd(buffer, pos, end));
+        return first < end ? buffer.get(first) : -1;
+    }
+
+    /** Inicio de la línea que contiene pos (o pos si ya es inicio de línea). */
+    private static int lineStart(ByteBuffer buffer, int pos) {
+        while (pos > 0 && buffer.get(pos - 1) != '\n') pos--;
+        return pos;
+    }
+
+    private static int lastLineEnd(ByteBuffer buffer, int limit) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') return i + 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Busca, al principio de alguna línea entre from y to, la primera cabecera que coincida con a o b.
+     * Devuelve el inicio de esa línea o -1.
+     */
+    private static int findAny(ByteBuffer buffer, int from, int to, byte[] a, byte[] b) {
+        for (int pos = from; pos < to; ) {
+            int end = lineEnd(buffer, pos, to);
+            int first = skipBlanks(buffer, pos, end);
+            if (first < end && buffer.get(first) == '[') {
+                if (startsWithIgnoreCase(buffer, first, end, a) || (b != null && startsWithIgnoreCase(buffer, first, end, b))) {
+                    return pos;
+                }
+            }
+            pos = end + 1;
+        }
+        return -1;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int end) {
+        return buffer.slice(0, end);
+    }
+}
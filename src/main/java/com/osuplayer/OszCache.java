@@ -0,0 +1,233 @@
+package com.osuplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Acceso a los .osz sin extraer de la carpeta Songs. Los .osu se leen directamente del archivo, y el audio,
+ * el fondo y el vídeo se extraen bajo demanda a una caché temporal para que VLC y JavaFX puedan abrirlos.
+ * La caché tiene un tamaño máximo y descarta primero los archivos usados hace más tiempo.
+ *
+ * Cada ejecución extrae en su propia carpeta (osulux-osz-...), con un archivo bloqueado mientras el proceso
+ * vive, así que dos instancias, o dos usuarios con el mismo directorio temporal, no se borran los archivos.
+ */
+public class OszCache {
+
+    private static final String EXTENSION = ".osz";
+    private static final Charset LEGACY_CHARSET = Charset.forName("IBM437");
+    private static final String SESSION_PREFIX = "osulux-osz-";
+    private static final String LOCK_FILE = ".lock";
+    /** Una carpeta sin archivo de bloqueo puede ser de una instancia que justo la está creando. */
+    private static final long UNLOCKED_GRACE_MILLIS = 60_000;
+
+    private final File parent;
+    private File directory;
+    // Abierto y bloqueado hasta que termina el proceso.
+    private FileChannel lockChannel;
+    private final long maxBytes;
+    // Orden de acceso: el primero es el menos usado recientemente.
+    private final LinkedHashMap<String, CachedFile> files = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private boolean prepared;
+    // .osz de la canción actual: su audio, fondo y vídeo no se descartan mientras se usan.
+    private String pinnedArchive;
+
+    private record CachedFile(String archive, File file, long size) {}
+
+    public OszCache(long maxBytes) {
+        this(new File(System.getProperty("java.io.tmpdir")), maxBytes);
+    }
+
+    /**
+     * @param parent carpeta donde se crea la de esta ejecución
+     */
+    public OszCache(File parent, long maxBytes) {
+        this.parent = parent;
+        this.maxBytes = maxBytes;
+    }
+
+    public static boolean isArchive(File file) {
+        return file.getName().toLowerCase().endsWith(EXTENSION);
+    }
+
+    /**
+     * Abre un .osz. Muchos se crearon con nombres en la codificación antigua de zip, no en UTF-8.
+     */
+    public static ZipFile open(File archive) throws IOException {
+        try {
+            return new ZipFile(archive, StandardCharsets.UTF_8);
+        } catch (ZipException | IllegalArgumentException e) {
+            return new ZipFile(archive, LEGACY_CHARSET);
+        }
+    }
+
+    /**
+     * Nombres de los archivos del .osz (sin directorios), leídos del directorio central. null si no se puede abrir.
+     */
+    public static String[] list(File archive) {
+        try (ZipFile zip = open(archive)) {
+            return entryNames(zip);
+        } catch (IOException e) {
+            System.err.println("No se pudo abrir " + archive.getAbsolutePath() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static String[] entryNames(ZipFile zip) {
+        List<String> names = new ArrayList<>(zip.size());
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory()) names.add(entry.getName());
+        }
+        return names.toArray(new String[0]);
+    }
+
+    /**
+     * Protege de la limpieza los archivos extraídos de este .osz (null para ninguno), que reemplaza al anterior.
+     */
+    public synchronized void pin(File archive) {
+        pinnedArchive = archive != null ? archive.getAbsolutePath() : null;
+    }
+
+    /**
+     * Devuelve una copia en disco de la entrada, extrayéndola si no está ya en la caché. null si no existe o falla.
+     */
+    public synchronized File extract(File archive, String entryName) {
+        if (!prepare()) return null;
+        String key = archive.getAbsolutePath() + '|' + archive.lastModified() + '|' + entryName;
+        CachedFile cached = files.get(key);
+        if (cached != null && cached.file().exists()) return cached.file();
+        if (cached != null) forget(key);
+
+        File target = new File(directory, Integer.toHexString(key.hashCode()) + '-' + baseName(entryName));
+        File tmp = new File(directory, target.getName() + ".part");
+        try (ZipFile zip = open(archive)) {
+            ZipEntry entry = findEntry(zip, entryName);
+            if (entry == null) return null;
+            try (InputStream in = zip.getInputStream(entry)) {
+                Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("No se pudo extraer " + entryName + " de " + archive.getName() + ": " + e.getMessage());
+            tmp.delete();
+            return null;
+        }
+
+        CachedFile extracted = new CachedFile(archive.getAbsolutePath(), target, target.length());
+        files.put(key, extracted);
+        totalBytes += extracted.size();
+        evict(key);
+        return target;
+    }
+
+    /**
+     * Descarta los archivos menos usados hasta quedar por debajo del límite. Nunca se borran el último extraído
+     * ni los del .osz protegido con {@link #pin}, porque se están reproduciendo o se van a reproducir. Un
+     * archivo que no se puede borrar (por ejemplo, abierto por otro proceso en Windows) sigue contando y se
+     * vuelve a intentar en la siguiente limpieza.
+     */
+    private void evict(String justExtracted) {
+        Iterator<Map.Entry<String, CachedFile>> it = files.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, CachedFile> entry = it.next();
+            CachedFile cached = entry.getValue();
+            if (entry.getKey().equals(justExtracted) || cached.archive().equals(pinnedArchive)) continue;
+            if (cached.file().delete() || !cached.file().exists()) {
+                totalBytes -= cached.size();
+                it.remove();
+            }
+        }
+    }
+
+    private void forget(String key) {
+        CachedFile cached = files.remove(key);
+        if (cached != null) totalBytes -= cached.size();
+    }
+
+    /**
+     * Crea la carpeta de esta ejecución al primer uso. La caché no sobrevive entre ejecuciones: antes se
+     * borran las carpetas que ya no bloquea ningún proceso. Devuelve false si no se ha podido crear.
+     */
+    private boolean prepare() {
+        if (prepared) return directory != null;
+        prepared = true;
+        removeStaleSessions();
+        try {
+            File session = Files.createTempDirectory(parent.toPath(), SESSION_PREFIX).toFile();
+            lockChannel = FileChannel.open(new File(session, LOCK_FILE).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            lockChannel.lock();
+            directory = session;
+        } catch (IOException e) {
+            System.err.println("No se pudo crear la caché de .osz en " + parent.getAbsolutePath() + ": " + e.getMessage());
+        }
+        return directory != null;
+    }
+
+    private void removeStaleSessions() {
+        File[] sessions = parent.listFiles((dir, name) -> name.startsWith(SESSION_PREFIX));
+        if (sessions == null) return;
+        for (File session : sessions) {
+            File lockFile = new File(session, LOCK_FILE);
+            boolean stale;
+            if (!lockFile.exists()) {
+                stale = System.currentTimeMillis() - session.lastModified() > UNLOCKED_GRACE_MILLIS;
+            } else {
+                try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.WRITE)) {
+                    FileLock lock = channel.tryLock();
+                    stale = lock != null;
+                    if (lock != null) lock.release();
+                } catch (IOException | OverlappingFileLockException e) {
+                    // De otro usuario, o de otra caché de este mismo proceso.
+                    stale = false;
+                }
+            }
+            if (!stale) continue;
+            File[] leftovers = session.listFiles();
+            if (leftovers != null) {
+                for (File file : leftovers) file.delete();
+            }
+            session.delete();
+        }
+    }
+
+    /**
+     * Busca la entrada sin distinguir mayúsculas ni el tipo de separador, como haría osu! en Windows.
+     */
+    private static ZipEntry findEntry(ZipFile zip, String entryName) {
+        ZipEntry exact = zip.getEntry(entryName);
+        if (exact != null) return exact;
+        String normalized = entryName.replace('\\', '/');
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.getName().replace('\\', '/').equalsIgnoreCase(normalized)) return entry;
+        }
+        return null;
+    }
+
+    private static String baseName(String entryName) {
+        String name = entryName.substring(Math.max(entryName.lastIndexOf('/'), entryName.lastIndexOf('\\')) + 1);
+        return name.isEmpty() || name.equals("..") ? "file" : name;
+    }
+}
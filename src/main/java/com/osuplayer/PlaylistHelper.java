@@ -1,7 +1,9 @@
 package com.osuplayer;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
 
@@ -22,33 +24,48 @@ import javafx.scene.layout.VBox;
 public class PlaylistHelper {
 
     private final PlaylistManager playlistManager;
+    private final SmartPlaylistManager smartPlaylistManager;
     private final ExportManager exportManager;
 
     private final ListView<String> playlistListView;
     private final Button newPlaylistButton;
+    private final Button newSmartPlaylistButton;
+    private final Button importCollectionsButton;
     private final VBox playlistPane;
 
     private Consumer<String> onPlaylistSelectedCallback;
     private Runnable onPlaylistsChangedCallback;
+    private Runnable onImportCollectionsCallback;
     private boolean blockSelectionListener = false;
 
-    public PlaylistHelper(PlaylistManager playlistManager, ExportManager exportManager) {
+    public PlaylistHelper(PlaylistManager playlistManager, SmartPlaylistManager smartPlaylistManager, ExportManager exportManager) {
         this.playlistManager = playlistManager;
+        this.smartPlaylistManager = smartPlaylistManager;
         this.exportManager = exportManager;
 
         this.playlistListView = new ListView<>();
         this.newPlaylistButton = new Button("Nueva Playlist");
         newPlaylistButton.setFocusTraversable(false);
+        this.newSmartPlaylistButton = new Button("Nueva playlist inteligente");
+        newSmartPlaylistButton.setFocusTraversable(false);
+        this.importCollectionsButton = new Button("Importar colecciones de osu!");
+        importCollectionsButton.setFocusTraversable(false);
 
-        this.playlistPane = new VBox(5, playlistListView, newPlaylistButton);
+        this.playlistPane = new VBox(5, playlistListView, newPlaylistButton, newSmartPlaylistButton, importCollectionsButton);
         VBox.setVgrow(playlistListView, Priority.ALWAYS);
         newPlaylistButton.setMaxWidth(Double.MAX_VALUE);
+        newSmartPlaylistButton.setMaxWidth(Double.MAX_VALUE);
+        importCollectionsButton.setMaxWidth(Double.MAX_VALUE);
     }
 
     public void setOnPlaylistsChangedCallback(Runnable onPlaylistsChangedCallback) {
         this.onPlaylistsChangedCallback = onPlaylistsChangedCallback;
     }
 
+    public void setOnImportCollectionsCallback(Runnable onImportCollectionsCallback) {
+        this.onImportCollectionsCallback = onImportCollectionsCallback;
+    }
+
     public VBox initialize(Consumer<String> onPlaylistSelectedCallback) {
         this.onPlaylistSelectedCallback = onPlaylistSelectedCallback;
         setupListView();
@@ -80,6 +97,8 @@ public class PlaylistHelper {
                         setText(item);
                         if (playlistManager.isSpecialPlaylist(item)) {
                             setStyle("-fx-font-weight: bold;");
+                        } else if (smartPlaylistManager.isSmartPlaylist(item)) {
+                            setStyle("-fx-font-style: italic;");
                         } else {
                             setStyle("");
                         }
@@ -105,11 +124,26 @@ public class PlaylistHelper {
         
         MenuItem exportAllItem = new MenuItem("Exportar todas las canciones");
         exportAllItem.setOnAction(e -> {
-            exportManager.exportPlaylist(playlistName, playlistManager.getPlaylistsAsMap());
+            Collection<String> songs = smartPlaylistManager.isSmartPlaylist(playlistName)
+                    ? smartPlaylistManager.getSongs(playlistName)
+                    : playlistManager.getPlaylist(playlistName);
+            exportManager.exportPlaylist(playlistName, Map.of(playlistName, new ArrayList<>(songs)));
         });
         contextMenu.getItems().add(exportAllItem);
 
-        if (!playlistManager.isSpecialPlaylist(playlistName)) {
+        if (smartPlaylistManager.isSmartPlaylist(playlistName)) {
+            MenuItem editRuleItem = new MenuItem("Editar regla");
+            editRuleItem.setOnAction(e -> editSmartPlaylistRule(playlistName));
+            MenuItem deleteItem = new MenuItem("Eliminar playlist");
+            deleteItem.setOnAction(e -> {
+                smartPlaylistManager.delete(playlistName);
+                refreshPlaylistList();
+                if (onPlaylistSelectedCallback != null) {
+                    onPlaylistSelectedCallback.accept("Todo");
+                }
+            });
+            contextMenu.getItems().addAll(editRuleItem, deleteItem);
+        } else if (!playlistManager.isSpecialPlaylist(playlistName)) {
             MenuItem deleteItem = new MenuItem("Eliminar playlist");
             deleteItem.setOnAction(e -> {
                 playlistManager.deletePlaylist(playlistName);
@@ -127,6 +161,10 @@ public class PlaylistHelper {
 
     private void setupButtonActions() {
         newPlaylistButton.setOnAction(e -> createNewPlaylist());
+        newSmartPlaylistButton.setOnAction(e -> createNewSmartPlaylist());
+        importCollectionsButton.setOnAction(e -> {
+            if (onImportCollectionsCallback != null) onImportCollectionsCallback.run();
+        });
     }
 
     private void createNewPlaylist() {
@@ -150,6 +188,42 @@ public class PlaylistHelper {
         });
     }
 
+    private void createNewSmartPlaylist() {
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("Nueva playlist inteligente");
+        dialog.setHeaderText(null);
+        dialog.setContentText("Nombre de la playlist:");
+
+        Optional<String> result = dialog.showAndWait();
+        result.ifPresent(name -> {
+            if (!playlistManager.isNameAvailable(name)) {
+                Alert alert = new Alert(Alert.AlertType.WARNING);
+                alert.setTitle("Nombre inválido");
+                alert.setHeaderText(null);
+                alert.setContentText("El nombre de la playlist no es válido o ya existe.");
+                alert.showAndWait();
+                return;
+            }
+            editSmartPlaylistRule(name.trim());
+        });
+    }
+
+    private void editSmartPlaylistRule(String name) {
+        String current = smartPlaylistManager.getRule(name);
+        TextInputDialog dialog = new TextInputDialog(current != null ? current : "");
+        dialog.setTitle("Regla de " + name);
+        dialog.setHeaderText("Filtros como en la búsqueda, más played (días sin escuchar) y fav:\n"
+                + "por ejemplo  tag:tech played>30   o   creator:\"Some Mapper\" fav:yes");
+        dialog.setContentText("Regla:");
+
+        dialog.showAndWait().ifPresent(rule -> {
+            if (rule.isBlank()) return;
+            smartPlaylistManager.setRule(name, rule);
+            refreshPlaylistList();
+            selectPlaylist(name);
+        });
+    }
+
     public void refreshPlaylistList() {
         String selected = getSelectedPlaylist();
         ObservableList<String> items = FXCollections.observableArrayList();
@@ -165,6 +239,7 @@ public class PlaylistHelper {
         }
         sortedUserPlaylists.sort(String.CASE_INSENSITIVE_ORDER);
         items.addAll(sortedUserPlaylists);
+        items.addAll(smartPlaylistManager.getNames());
 
         playlistListView.setItems(items);
         if (selected != null && items.contains(selected)) {
@@ -1,33 +1,151 @@
 package com.osuplayer;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
+/**
+ * Playlists del usuario y las especiales (Todo, Favoritos, Historial), guardadas en la carpeta playlists con
+ * {@link PlaylistStore}. Al arrancar solo se leen los nombres; las canciones de cada playlist se leen la
+ * primera vez que se piden.
+ *
+ * Cada playlist es un conjunto ordenado por inserción, y un índice inverso da las playlists de cada canción
+ * sin recorrerlas. El índice solo incluye las playlists ya leídas (y nunca "Todo", que las tiene todas): la
+ * primera consulta lee las que falten.
+ */
 public class PlaylistManager {
 
+    private static final String PLAYLISTS_DIRECTORY = "playlists";
+    private static final String ALL_SONGS = "Todo";
+    private static final String FAVORITES = "Favoritos";
+
     private final ConfigManager configManager;
-    private final Map<String, List<String>> playlists;
-    private final Set<String> specialPlaylists = Set.of("Todo", "Favoritos", "Historial");
+    private final PlaylistStore store;
+    // null mientras la playlist no se ha leído.
+    private final Map<String, LinkedHashSet<String>> playlists;
+    // Canción -> playlists leídas que la contienen, salvo "Todo". Suelen ser pocas: basta una lista.
+    private final Map<String, List<String>> playlistsBySong = new HashMap<>();
+    private boolean allLoaded;
+    private final Set<String> specialPlaylists = Set.of(ALL_SONGS, FAVORITES, "Historial");
+    private UnaryOperator<String> songResolver;
+    private Predicate<String> reservedNames = name -> false;
 
     public PlaylistManager(ConfigManager configManager) {
         this.configManager = configManager;
+        this.store = new PlaylistStore(Path.of(PLAYLISTS_DIRECTORY));
         this.playlists = new LinkedHashMap<>();
         loadPlaylists();
     }
 
     private void loadPlaylists() {
-        Map<String, List<String>> loaded = configManager.getPlaylists();
-        if (loaded != null) {
-            playlists.putAll(loaded);
+        migrateFromConfig();
+        for (String name : store.names()) {
+            playlists.put(name, null);
         }
+        // No vale putIfAbsent: trata como ausentes las playlists aún sin leer (valor null).
         for (String special : specialPlaylists) {
-            playlists.putIfAbsent(special, new ArrayList<>());
+            if (!playlists.containsKey(special)) playlists.put(special, new LinkedHashSet<>());
+        }
+    }
+
+    /**
+     * Pasa las playlists (playlist.nombre=canción,canción) y los favoritos que estaban en config.properties a
+     * sus propios archivos. Se borran de la configuración solo si todos los archivos y el índice se han escrito.
+     */
+    private void migrateFromConfig() {
+        Map<String, List<String>> legacy = configManager.getPlaylists();
+        List<String> legacyFavorites = configManager.getFavorites();
+        if (legacy.isEmpty() && legacyFavorites.isEmpty()) return;
+        Set<String> existing = new HashSet<>(store.names());
+        for (Map.Entry<String, List<String>> entry : legacy.entrySet()) {
+            if (!existing.contains(entry.getKey())) store.write(entry.getKey(), entry.getValue());
+        }
+        if (!legacyFavorites.isEmpty()) {
+            // La lista de la configuración manda; se conserva el orden que ya tuviera la playlist Favoritos.
+            LinkedHashSet<String> favorites = new LinkedHashSet<>(store.load(FAVORITES));
+            favorites.retainAll(legacyFavorites);
+            favorites.addAll(legacyFavorites);
+            store.write(FAVORITES, favorites);
+        }
+        if (!store.flush()) {
+            System.err.println("No se han podido pasar las playlists de config.properties; se reintentará al arrancar.");
+            return;
+        }
+        for (String name : legacy.keySet()) {
+            configManager.removePlaylist(name);
+        }
+        configManager.removeFavorites();
+        System.out.println("Se han pasado " + legacy.size() + " playlists y " + legacyFavorites.size()
+                + " favoritos de config.properties a la carpeta " + PLAYLISTS_DIRECTORY + ".");
+    }
+
+    /**
+     * Función que da el nombre de canción que se guarda en memoria al leer una playlist (el de la biblioteca,
+     * para no duplicar cadenas), o null si la canción ya no existe y se descarta. Sin ella se leen tal cual.
+     */
+    public void setSongResolver(UnaryOperator<String> songResolver) {
+        this.songResolver = songResolver;
+    }
+
+    /**
+     * Nombres que ya usa otro tipo de playlist (las inteligentes) y que no pueden repetirse aquí. Los nombres
+     * distinguen mayúsculas en ambos casos.
+     */
+    public void setReservedNames(Predicate<String> reservedNames) {
+        this.reservedNames = reservedNames;
+    }
+
+    /** Si se puede crear una playlist, normal o inteligente, con ese nombre. */
+    public boolean isNameAvailable(String name) {
+        String trimmed = name.trim();
+        return !trimmed.isEmpty() && !playlists.containsKey(trimmed) && !isSpecialPlaylist(trimmed)
+                && !reservedNames.test(trimmed);
+    }
+
+    /** Playlists cuyas canciones ya se han leído. */
+    public Set<String> getLoadedPlaylists() {
+        Set<String> loaded = new HashSet<>();
+        for (Map.Entry<String, LinkedHashSet<String>> entry : playlists.entrySet()) {
+            if (entry.getValue() != null) loaded.add(entry.getKey());
+        }
+        return loaded;
+    }
+
+    private LinkedHashSet<String> songs(String name) {
+        LinkedHashSet<String> songs = playlists.get(name);
+        if (songs == null && playlists.containsKey(name)) {
+            songs = new LinkedHashSet<>();
+            for (String song : store.load(name)) {
+                String resolved = songResolver != null ? songResolver.apply(song) : song;
+                if (resolved != null) songs.add(resolved);
+            }
+            playlists.put(name, songs);
+            for (String song : songs) index(name, song);
         }
-        savePlaylists();
+        return songs;
+    }
+
+    private void index(String playlist, String song) {
+        if (playlist.equals(ALL_SONGS)) return;
+        List<String> containing = playlistsBySong.computeIfAbsent(song, k -> new ArrayList<>(2));
+        if (!containing.contains(playlist)) containing.add(playlist);
+    }
+
+    private void unindex(String playlist, String song) {
+        List<String> containing = playlistsBySong.get(song);
+        if (containing == null) return;
+        containing.remove(playlist);
+        if (containing.isEmpty()) playlistsBySong.remove(song);
     }
 
     public boolean isSpecialPlaylist(String name) {
@@ -35,57 +153,127 @@ public class PlaylistManager {
     }
 
     public boolean createPlaylist(String name) {
+        if (!isNameAvailable(name)) return false;
         String trimmed = name.trim();
-        if (trimmed.isEmpty() || playlists.containsKey(trimmed) || isSpecialPlaylist(trimmed)) {
-            return false;
-        }
-        playlists.put(trimmed, new ArrayList<>());
-        savePlaylists();
+        playlists.put(trimmed, new LinkedHashSet<>());
+        store.write(trimmed, List.of());
         return true;
     }
 
     public void deletePlaylist(String name) {
         if (!isSpecialPlaylist(name)) {
-            playlists.remove(name);
-            savePlaylists();
+            LinkedHashSet<String> songs = playlists.remove(name);
+            if (songs != null) {
+                for (String song : songs) unindex(name, song);
+            }
+            store.delete(name);
         }
     }
 
     public void addToPlaylist(String playlist, String song) {
-        playlists.computeIfAbsent(playlist, k -> new ArrayList<>());
-        if (!playlists.get(playlist).contains(song)) {
-            playlists.get(playlist).add(song);
-            savePlaylists();
+        LinkedHashSet<String> songs = songs(playlist);
+        if (songs == null) {
+            songs = new LinkedHashSet<>();
+            playlists.put(playlist, songs);
+        }
+        if (songs.add(song)) {
+            index(playlist, song);
+            store.append(playlist, song);
         }
     }
 
     public void removeFromPlaylist(String playlist, String song) {
-        if (playlists.containsKey(playlist)) {
-            playlists.get(playlist).remove(song);
-            savePlaylists();
+        LinkedHashSet<String> songs = songs(playlist);
+        if (songs != null && songs.remove(song)) {
+            unindex(playlist, song);
+            store.write(playlist, songs);
         }
     }
 
-    public List<String> getPlaylist(String name) {
-        return playlists.getOrDefault(name, Collections.emptyList());
+    public boolean containsSong(String playlist, String song) {
+        LinkedHashSet<String> songs = songs(playlist);
+        return songs != null && songs.contains(song);
+    }
+
+    /** Canciones de la playlist en su orden, sin copiarlas. No se puede modificar. */
+    public Collection<String> getPlaylist(String name) {
+        LinkedHashSet<String> songs = songs(name);
+        return songs != null ? Collections.unmodifiableSet(songs) : Collections.emptySet();
+    }
+
+    /**
+     * Playlists que contienen la canción, salvo "Todo". La primera vez lee las playlists que aún no se han
+     * leído; después es una consulta al índice inverso.
+     */
+    public List<String> getPlaylistsContaining(String song) {
+        if (!allLoaded) {
+            for (String name : new ArrayList<>(playlists.keySet())) {
+                if (!name.equals(ALL_SONGS)) songs(name);
+            }
+            allLoaded = true;
+        }
+        List<String> containing = playlistsBySong.get(song);
+        return containing != null ? Collections.unmodifiableList(containing) : Collections.emptyList();
     }
 
     public Set<String> getAllPlaylists() {
         return playlists.keySet();
     }
 
-    public Map<String, List<String>> getPlaylistsAsMap() {
-        return Collections.unmodifiableMap(playlists);
+    public void setPlaylistSongs(String playlist, Collection<String> songs) {
+        if (playlist != null) {
+            LinkedHashSet<String> previous = playlists.get(playlist);
+            LinkedHashSet<String> updated = new LinkedHashSet<>(songs);
+            if (previous != null && sameOrder(previous, updated)) return;
+            if (previous != null) {
+                for (String song : previous) {
+                    if (!updated.contains(song)) unindex(playlist, song);
+                }
+            }
+            for (String song : updated) index(playlist, song);
+            playlists.put(playlist, updated);
+            store.write(playlist, updated);
+        }
     }
 
-    public void setPlaylistSongs(String playlist, List<String> songs) {
-        if (playlist != null) {
-            playlists.put(playlist, new ArrayList<>(songs));
-            savePlaylists();
+    private static boolean sameOrder(Collection<String> a, Collection<String> b) {
+        if (a.size() != b.size()) return false;
+        var other = b.iterator();
+        for (String song : a) {
+            if (!song.equals(other.next())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Crea varias playlists de una vez. Si ya existe una playlist
+     * con el mismo nombre se le añaden las canciones que no tenga; los nombres reservados llevan " (osu!)".
+     * @return número de playlists creadas o modificadas
+     */
+    public int importPlaylists(Map<String, List<String>> imported) {
+        int changed = 0;
+        for (Map.Entry<String, List<String>> entry : imported.entrySet()) {
+            String name = entry.getKey().trim();
+            if (name.isEmpty()) continue;
+            if (isSpecialPlaylist(name) || reservedNames.test(name)) name = name + " (osu!)";
+
+            boolean created = !playlists.containsKey(name);
+            LinkedHashSet<String> playlist = created ? new LinkedHashSet<>() : songs(name);
+            playlists.put(name, playlist);
+            int before = playlist.size();
+            for (String song : entry.getValue()) {
+                if (playlist.add(song)) index(name, song);
+            }
+            if (created || playlist.size() != before) {
+                store.write(name, playlist);
+                changed++;
+            }
         }
+        return changed;
     }
 
-    public void savePlaylists() {
-        configManager.setPlaylists(playlists);
+    /** Escribe los cambios pendientes. Se llama al cerrar la aplicación. */
+    public void shutdown() {
+        store.shutdown();
     }
-}
\ No newline at end of file
+}
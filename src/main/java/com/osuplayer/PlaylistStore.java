@@ -0,0 +1,372 @@
+package com.osuplayer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Playlists guardadas cada una en su propio archivo dentro de una carpeta, con una canción por línea
+ * (\, saltos de línea y retornos de carro escapados), así que los nombres con comas se guardan tal cual.
+ * Un índice (index.txt) relaciona cada nombre con su archivo, que se identifica por número para no depender
+ * de los caracteres que admite el sistema de archivos.
+ *
+ * Los cambios se escriben en segundo plano agrupados como en {@link ConfigManager}: añadir una canción
+ * añade una línea al archivo de esa playlist; cualquier otro cambio reescribe solo esa playlist (archivo
+ * temporal y renombrado). Una última línea a medias tras un corte se ignora al leer. Las canciones solo se
+ * leen cuando se piden con {@link #load}.
+ */
+final class PlaylistStore {
+
+    private static final String INDEX_FILE = "index.txt";
+    private static final String EXTENSION = ".playlist";
+    private static final long FLUSH_DELAY_MILLIS = 500;
+
+    /** Cambios pendientes de un archivo: su contenido completo, o líneas a añadir al final. */
+    private static final class Pending {
+        List<String> contents;
+        final List<String> appended = new ArrayList<>();
+        boolean deleted;
+    }
+
+    private final Path directory;
+    private final Map<String, Integer> ids = new LinkedHashMap<>();
+    private int nextId = 1;
+
+    private final Map<Integer, Pending> pending = new HashMap<>();
+    private boolean indexDirty;
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "playlist-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    // Solo una escritura a la vez; se toma antes que el cerrojo del almacén.
+    private final Object writeLock = new Object();
+    private ScheduledFuture<?> pendingFlush;
+
+    PlaylistStore(Path directory) {
+        this.directory = directory;
+        readIndex();
+    }
+
+    /** Nombres de las playlists guardadas, sin leer su contenido. */
+    synchronized List<String> names() {
+        return List.copyOf(ids.keySet());
+    }
+
+    /**
+     * Lee las canciones de una playlist, línea a línea. Incluye los cambios que aún no se han escrito.
+     */
+    List<String> load(String name) {
+        // Con writeLock tomado no se escribe nada, así que archivo y cambios pendientes no se solapan.
+        synchronized (writeLock) {
+            Integer id;
+            List<String> appended;
+            synchronized (this) {
+                id = ids.get(name);
+                if (id == null) return new ArrayList<>();
+                Pending change = pending.get(id);
+                if (change != null && change.contents != null) {
+                    List<String> songs = new ArrayList<>(change.contents);
+                    songs.addAll(change.appended);
+                    return songs;
+                }
+                appended = change != null ? new ArrayList<>(change.appended) : List.of();
+            }
+            List<String> songs = new ArrayList<>();
+            try (BufferedReader reader = Files.newBufferedReader(file(id), StandardCharsets.UTF_8)) {
+                char[] buffer = new char[8192];
+                StringBuilder line = new StringBuilder();
+                int read;
+                while ((read = reader.read(buffer)) >= 0) {
+                    int start = 0;
+                    for (int i = 0; i < read; i++) {
+                        if (buffer[i] != '\n') continue;
+                        line.append(buffer, start, i - start);
+                        songs.add(unescape(line));
+                        line.setLength(0);
+                        start = i + 1;
+                    }
+                    line.append(buffer, start, read - start);
+                }
+                if (line.length() > 0) {
+                    System.out.println("Se ha descartado una canción incompleta al final de la playlist " + name + ".");
+                }
+            } catch (NoSuchFileException e) {
+                // Playlist creada pero aún sin escribir.
+            } catch (IOException e) {
+                System.err.println("No se pudo leer la playlist " + name + ": " + e.getMessage());
+            }
+            songs.addAll(appended);
+            return songs;
+        }
+    }
+
+    /** Guarda el contenido completo de una playlist, creándola si no existe. */
+    void write(String name, Collection<String> songs) {
+        synchronized (this) {
+            Pending change = change(idFor(name));
+            change.contents = new ArrayList<>(songs);
+            change.appended.clear();
+            change.deleted = false;
+        }
+        scheduleFlush();
+    }
+
+    /** Añade una canción al final de una playlist, creándola si no existe. */
+    void append(String name, String song) {
+        synchronized (this) {
+            Pending change = change(idFor(name));
+            if (change.contents != null) change.contents.add(song);
+            else change.appended.add(song);
+        }
+        scheduleFlush();
+    }
+
+    void delete(String name) {
+        synchronized (this) {
+            Integer id = ids.remove(name);
+            if (id == null) return;
+            Pending change = change(id);
+            change.contents = null;
+            change.appended.clear();
+            change.deleted = true;
+            indexDirty = true;
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Escribe ya los cambios pendientes en el hilo que llama. Devuelve false si algo no se pudo escribir; esos
+     * cambios siguen pendientes y se reintentan con la siguiente escritura o al cerrar.
+     */
+    boolean flush() {
+        synchronized (writeLock) {
+            Map<Integer, Pending> changes;
+            Map<String, Integer> index = null;
+            synchronized (this) {
+                if (pendingFlush != null) {
+                    pendingFlush.cancel(false);
+                    pendingFlush = null;
+                }
+                changes = new HashMap<>(pending);
+                pending.clear();
+                if (indexDirty) index = new LinkedHashMap<>(ids);
+                indexDirty = false;
+            }
+            try {
+                Files.createDirectories(directory);
+                // El índice va primero: un archivo que aún no está en él se ignora, y una playlist del
+                // índice sin archivo se lee vacía.
+                if (index != null) writeIndex(index);
+                index = null;
+                for (var it = changes.entrySet().iterator(); it.hasNext();) {
+                    Map.Entry<Integer, Pending> entry = it.next();
+                    Path file = file(entry.getKey());
+                    Pending change = entry.getValue();
+                    if (change.deleted) {
+                        Files.deleteIfExists(file);
+                    } else if (change.contents != null) {
+                        writeAtomically(file, change.contents);
+                    } else if (!change.appended.isEmpty()) {
+                        appendLines(file, change.appended);
+                    }
+                    it.remove();
+                }
+                return true;
+            } catch (IOException e) {
+                System.err.println("No se pudieron guardar las playlists: " + e.getMessage());
+                restore(changes, index != null);
+                return false;
+            }
+        }
+    }
+
+    /** Devuelve a pendientes los cambios que no se escribieron, por delante de los llegados después. */
+    private synchronized void restore(Map<Integer, Pending> failed, boolean indexFailed) {
+        if (indexFailed) indexDirty = true;
+        for (Map.Entry<Integer, Pending> entry : failed.entrySet()) {
+            Pending older = entry.getValue();
+            Pending newer = pending.get(entry.getKey());
+            if (newer == null) {
+                pending.put(entry.getKey(), older);
+            } else if (!newer.deleted && newer.contents == null) {
+                // Los nuevos solo añaden líneas: van detrás de lo que no se escribió.
+                if (older.contents != null) {
+                    older.contents.addAll(newer.appended);
+                } else {
+                    older.appended.addAll(newer.appended);
+                }
+                pending.put(entry.getKey(), older);
+            }
+        }
+    }
+
+    void shutdown() {
+        flush();
+        writer.shutdown();
+    }
+
+    private int idFor(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = nextId++;
+            ids.put(name, id);
+            indexDirty = true;
+            // Se escribe entera la primera vez, por si quedó un archivo antiguo con ese número.
+            change(id).contents = new ArrayList<>();
+        }
+        return id;
+    }
+
+    private Pending change(int id) {
+        return pending.computeIfAbsent(id, k -> new Pending());
+    }
+
+    /**
+     * Programa la escritura de los cambios pendientes. Después de cerrar se escriben ya en el hilo que llama;
+     * por eso se llama fuera del cerrojo de la tienda, ya que flush toma antes el de escritura.
+     */
+    private void scheduleFlush() {
+        synchronized (this) {
+            if (!writer.isShutdown()) {
+                if (pendingFlush == null) {
+                    pendingFlush = writer.schedule(() -> flush(), FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+        flush();
+    }
+
+    private Path file(int id) {
+        return directory.resolve(id + EXTENSION);
+    }
+
+    // Cada línea del índice es "número<TAB>nombre", con el nombre escapado como las canciones.
+    private void readIndex() {
+        Path index = directory.resolve(INDEX_FILE);
+        if (!Files.exists(index)) return;
+        try {
+            for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab <= 0) continue;
+                try {
+                    int id = Integer.parseInt(line.substring(0, tab));
+                    ids.put(unescape(line.substring(tab + 1)), id);
+                    nextId = Math.max(nextId, id + 1);
+                } catch (NumberFormatException e) {
+                    System.err.println("Línea no válida en el índice de playlists: " + line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudo leer el índice de playlists: " + e.getMessage());
+        }
+    }
+
+    private void writeIndex(Map<String, Integer> index) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : index.entrySet()) {
+            lines.add(entry.getValue() + "\t" + escape(entry.getKey()));
+        }
+        writeLinesAtomically(directory.resolve(INDEX_FILE), lines);
+    }
+
+    private static void writeAtomically(Path file, List<String> songs) throws IOException {
+        List<String> lines = new ArrayList<>(songs.size());
+        for (String song : songs) lines.add(escape(song));
+        writeLinesAtomically(file, lines);
+    }
+
+    private static void writeLinesAtomically(Path file, List<String> lines) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeLines(channel, lines);
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void appendLines(Path file, List<String> songs) throws IOException {
+        List<String> lines = new ArrayList<>(songs.size());
+        for (String song : songs) lines.add(escape(song));
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            writeLines(channel, lines);
+            channel.force(false);
+        }
+    }
+
+    private static void writeLines(FileChannel channel, List<String> lines) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+        for (String line : lines) {
+            out.write(line);
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    private static String escape(String value) {
+        if (value.indexOf('\\') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0 && value.indexOf('\t') < 0) {
+            return value;
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\t' -> escaped.append("\\t");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescape(CharSequence value) {
+        StringBuilder result = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                if (result == null) result = new StringBuilder(value.subSequence(0, i));
+                char next = value.charAt(++i);
+                result.append(switch (next) {
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    case 't' -> '\t';
+                    default -> next;
+                });
+            } else if (result != null) {
+                result.append(c);
+            }
+        }
+        return result != null ? result.toString() : value.toString();
+    }
+}
@@ -0,0 +1,542 @@
+package com.osuplayer;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Índice invertido de trigramas sobre el texto de búsqueda de cada canción (nombre, nombres originales,
+ * fuente, creador y tags). Cada trigrama apunta a la lista ordenada de IDs cuyo texto lo contiene; una
+ * búsqueda intersecta las listas de los trigramas de la consulta y solo comprueba con contains los
+ * candidatos que quedan.
+ *
+ * Las claves y las consultas pasan por la misma normalización (minúsculas y, según la configuración,
+ * sin acentos y con los caracteres de ancho completo convertidos), así que al buscar solo se compara.
+ *
+ * Al borrar o modificar una canción su ID sale de las listas de los trigramas que ya no tiene, así que las
+ * listas no crecen con cada cambio que detecta el vigilante de la carpeta.
+ *
+ * Los últimos resultados se guardan por consulta. Si la nueva consulta contiene a una anterior (se ha
+ * seguido escribiendo), sus coincidencias son un subconjunto de las de aquella y solo se comprueban esas;
+ * al borrar caracteres se vuelve a un resultado guardado. Cualquier cambio en el índice los descarta.
+ *
+ * Se modifica desde el hilo de JavaFX y se consulta desde el hilo de búsqueda, así que los métodos
+ * públicos del paquete están sincronizados.
+ */
+final class SearchIndex {
+
+    private static final int GRAM = 3;
+    private static final int CACHED_RESULTS = 32;
+    /** La búsqueda aproximada compara con un único long por columna, así que la consulta se corta aquí. */
+    private static final int FUZZY_MAX_LENGTH = 64;
+    /** Máximo de canciones puntuadas por búsqueda aproximada; las que comparten menos trigramas quedan fuera. */
+    private static final int FUZZY_MAX_SCORED = 4096;
+    /** Separa los campos dentro de la clave, para que ninguna coincidencia cruce de un campo a otro. */
+    static final char FIELD_SEPARATOR = '\n';
+
+    /**
+     * Cómo se normaliza el texto. stripAccents hace que "cancion" encuentre "canción"; foldWidth usa la
+     * descomposición de compatibilidad (NFKD), que convierte "ＡＢＣ" en "abc" y el katakana de medio ancho
+     * en el normal.
+     */
+    record Normalization(boolean stripAccents, boolean foldWidth) {
+        static final Normalization DEFAULT = new Normalization(true, true);
+    }
+
+    private Normalization normalization = Normalization.DEFAULT;
+    private String[] keys = new String[1024];
+    private int size;
+    // Tabla hash abierta trigrama → lista, sin objetos por clave: se consulta millones de veces al indexar.
+    private long[] gramKeys = new long[1 << 12];
+    private Postings[] gramLists = new Postings[1 << 12];
+    private int gramCount;
+
+    private record CachedResult(BitSet ids, int count) {}
+
+    // Contador de trigramas compartidos por ID, reutilizado entre búsquedas aproximadas.
+    private int[] sharedGrams = new int[0];
+
+    // Orden de acceso: al llenarse se descarta la consulta usada hace más tiempo.
+    private final Map<String, CachedResult> results = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+            return size() > CACHED_RESULTS;
+        }
+    };
+
+    /** Lista de IDs de un trigrama. Se añade casi siempre en orden creciente; si no, se ordena al consultar. */
+    private static final class Postings {
+        int[] ids = new int[4];
+        int count;
+        boolean sorted = true;
+
+        void add(int id) {
+            if (count > 0) {
+                int last = ids[count - 1];
+                if (last == id) return;
+                if (last > id) sorted = false;
+            }
+            if (count == ids.length) ids = Arrays.copyOf(ids, count * 2);
+            ids[count++] = id;
+        }
+
+        void remove(int id) {
+            if (sorted) {
+                int pos = Arrays.binarySearch(ids, 0, count, id);
+                if (pos < 0) return;
+                System.arraycopy(ids, pos + 1, ids, pos, count - pos - 1);
+                count--;
+                return;
+            }
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (ids[i] != id) ids[kept++] = ids[i];
+            }
+            count = kept;
+        }
+
+        void compact() {
+            if (sorted) return;
+            Arrays.sort(ids, 0, count);
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                if (unique == 0 || ids[unique - 1] != ids[i]) ids[unique++] = ids[i];
+            }
+            count = unique;
+            sorted = true;
+        }
+    }
+
+    synchronized Normalization normalization() {
+        return normalization;
+    }
+
+    /** Cambia la normalización. Las claves ya indexadas dejan de valer: hay que vaciar y volver a indexar. */
+    synchronized void setNormalization(Normalization normalization) {
+        this.normalization = normalization;
+        clear();
+    }
+
+    /** Convierte un texto (o una consulta) a la forma en que se guarda en el índice. */
+    synchronized String normalize(String text) {
+        if (text == null) return "";
+        String value = text.trim();
+        if (value.isEmpty()) return value;
+        if (normalization.foldWidth()) value = Normalizer.normalize(value, Normalizer.Form.NFKD);
+        else if (normalization.stripAccents()) value = Normalizer.normalize(value, Normalizer.Form.NFD);
+        if (normalization.stripAccents()) value = stripMarks(value);
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Quita las marcas diacríticas que dejó la descomposición, salvo el dakuten y el handakuten del japonés,
+     * que cambian la sílaba (か y が no son la misma letra).
+     */
+    private static String stripMarks(String value) {
+        StringBuilder out = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            boolean mark = Character.getType(c) == Character.NON_SPACING_MARK && c != '\u3099' && c != '\u309A';
+            if (mark && out == null) out = new StringBuilder(value.length()).append(value, 0, i);
+            else if (!mark && out != null) out.append(c);
+        }
+        return out != null ? out.toString() : value;
+    }
+
+    /**
+     * Indexa (o reindexa) la clave de una canción. La clave debe estar ya normalizada.
+     */
+    synchronized void put(int id, String key) {
+        if (id >= keys.length) keys = Arrays.copyOf(keys, Math.max(id + 1, keys.length + (keys.length >> 1)));
+        size = Math.max(size, id + 1);
+        if (key.equals(keys[id])) return;
+        String previous = keys[id];
+        keys[id] = key;
+        results.clear();
+
+        long[] grams = trigrams(key);
+        long[] previousGrams = previous != null ? trigrams(previous) : new long[0];
+        // Ambas listas están ordenadas: solo se tocan los trigramas que cambian.
+        for (long gram : previousGrams) {
+            if (Arrays.binarySearch(grams, gram) < 0) removeFrom(gram, id);
+        }
+        for (long gram : grams) {
+            if (Arrays.binarySearch(previousGrams, gram) < 0) postingsFor(gram, true).add(id);
+        }
+    }
+
+    synchronized void remove(int id) {
+        if (id < size && keys[id] != null) {
+            for (long gram : trigrams(keys[id])) removeFrom(gram, id);
+            keys[id] = null;
+            results.clear();
+        }
+    }
+
+    private void removeFrom(long gram, int id) {
+        Postings list = postingsFor(gram, false);
+        if (list != null) list.remove(id);
+    }
+
+    synchronized void clear() {
+        Arrays.fill(keys, 0, size, null);
+        size = 0;
+        Arrays.fill(gramLists, null);
+        gramCount = 0;
+        results.clear();
+    }
+
+    synchronized boolean matches(int id, String query) {
+        String key = id >= 0 && id < size ? keys[id] : null;
+        return key != null && key.contains(query);
+    }
+
+    /**
+     * IDs cuyo texto contiene la consulta, ya normalizada. El resultado puede estar compartido con la caché:
+     * no se debe modificar.
+     */
+    synchronized BitSet search(String query) {
+        CachedResult cached = results.get(query);
+        if (cached != null) return cached.ids();
+
+        // Toda clave que contiene la consulta contiene también cualquier parte de ella, así que basta con
+        // revisar el resultado guardado más pequeño de una consulta contenida en esta.
+        CachedResult base = null;
+        for (Map.Entry<String, CachedResult> entry : results.entrySet()) {
+            CachedResult candidate = entry.getValue();
+            if (query.contains(entry.getKey()) && (base == null || candidate.count() < base.count())) base = candidate;
+        }
+        BitSet result = base != null ? refine(base.ids(), query) : lookup(query);
+        results.put(query, new CachedResult(result, result.cardinality()));
+        return result;
+    }
+
+    /**
+     * Cota superior barata del número de coincidencias: el resultado guardado si lo hay, o la lista de
+     * trigramas más corta. Sirve para decidir en qué orden se aplican los filtros de una consulta.
+     */
+    synchronized int estimate(String query) {
+        CachedResult cached = results.get(query);
+        if (cached != null) return cached.count();
+        long[] grams = trigrams(query);
+        if (grams.length == 0) return size;
+        int smallest = Integer.MAX_VALUE;
+        for (long gram : grams) {
+            Postings list = postingsFor(gram, false);
+            if (list == null) return 0;
+            smallest = Math.min(smallest, list.count);
+        }
+        return smallest;
+    }
+
+    private BitSet refine(BitSet previous, String query) {
+        BitSet result = new BitSet(size);
+        for (int id = previous.nextSetBit(0); id >= 0; id = previous.nextSetBit(id + 1)) {
+            if (matches(id, query)) result.set(id);
+        }
+        return result;
+    }
+
+    /**
+     * Búsqueda sin resultados previos. Las consultas de menos de tres caracteres no tienen trigramas y
+     * recorren todas las claves.
+     */
+    private BitSet lookup(String query) {
+        BitSet result = new BitSet(size);
+        if (query.length() < GRAM) {
+            for (int id = 0; id < size; id++) {
+                if (keys[id] != null && keys[id].contains(query)) result.set(id);
+            }
+            return result;
+        }
+
+        long[] grams = trigrams(query);
+        Postings[] lists = new Postings[grams.length];
+        for (int i = 0; i < grams.length; i++) {
+            lists[i] = postingsFor(grams[i], false);
+            if (lists[i] == null) return result;
+            lists[i].compact();
+        }
+        // Se recorre la lista más corta y se busca cada ID en las demás, que solo avanzan.
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.count, b.count));
+        int[] cursors = new int[lists.length];
+        Postings smallest = lists[0];
+        candidates:
+        for (int i = 0; i < smallest.count; i++) {
+            int id = smallest.ids[i];
+            for (int l = 1; l < lists.length; l++) {
+                Postings list = lists[l];
+                int pos = Arrays.binarySearch(list.ids, cursors[l], list.count, id);
+                if (pos < 0) {
+                    cursors[l] = -pos - 1;
+                    if (cursors[l] >= list.count) break candidates;
+                    continue candidates;
+                }
+                cursors[l] = pos + 1;
+            }
+            if (matches(id, query)) result.set(id);
+        }
+        return result;
+    }
+
+    /**
+     * Errores (inserciones, borrados o sustituciones) que tolera la búsqueda aproximada según la longitud
+     * de la consulta. Por debajo de 4 caracteres no se tolera ninguno.
+     */
+    static int maxEdits(int length) {
+        return length < 4 ? 0 : length < 8 ? 1 : length < 12 ? 2 : 3;
+    }
+
+    /**
+     * Búsqueda aproximada: los IDs de las canciones cuyo texto contiene algo a pocos errores de la consulta,
+     * de mejor a peor y como mucho limit. Primero van las de menos errores; a igualdad, las que coinciden en
+     * el nombre y después el orden de biblioteca.
+     *
+     * Solo se puntúan las canciones que comparten trigramas con la consulta: cada error rompe como mucho
+     * tres, así que una canción a d errores comparte al menos (trigramas - 3d). Se puntúan de más a menos
+     * trigramas compartidos y se para cuando ninguna de las que quedan puede mejorar el peor resultado, o
+     * cuando ya se han puntuado {@link #FUZZY_MAX_SCORED}.
+     */
+    synchronized int[] fuzzySearch(String query, int limit) {
+        if (limit <= 0 || query.isEmpty()) return new int[0];
+        if (query.length() > FUZZY_MAX_LENGTH) query = query.substring(0, FUZZY_MAX_LENGTH);
+        long[] grams = trigrams(query);
+        if (grams.length == 0) return firstIds(search(query), limit);
+
+        int maxEdits = maxEdits(query.length());
+        if (sharedGrams.length < size) sharedGrams = new int[size];
+        int[] touched = new int[64];
+        int touchedCount = 0;
+        for (long gram : grams) {
+            Postings list = postingsFor(gram, false);
+            if (list == null) continue;
+            list.compact();
+            for (int i = 0; i < list.count; i++) {
+                int id = list.ids[i];
+                if (sharedGrams[id]++ == 0) {
+                    if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touchedCount * 2);
+                    touched[touchedCount++] = id;
+                }
+            }
+        }
+
+        // Candidatos agrupados por número de trigramas compartidos (ordenación por cuenta).
+        int minShared = Math.max(1, grams.length - GRAM * maxEdits);
+        int[] bucketStart = new int[grams.length + 2];
+        for (int i = 0; i < touchedCount; i++) bucketStart[sharedGrams[touched[i]] + 1]++;
+        for (int c = 1; c < bucketStart.length; c++) bucketStart[c] += bucketStart[c - 1];
+        int[] byShared = new int[touchedCount];
+        int[] fill = Arrays.copyOf(bucketStart, bucketStart.length);
+        for (int i = 0; i < touchedCount; i++) {
+            int id = touched[i];
+            byShared[fill[sharedGrams[id]]++] = id;
+            sharedGrams[id] = 0;
+        }
+
+        FuzzyPattern pattern = new FuzzyPattern(query);
+        TopK top = new TopK(limit);
+        int scored = 0;
+        buckets:
+        for (int shared = grams.length; shared >= minShared; shared--) {
+            int minEdits = (grams.length - shared + GRAM - 1) / GRAM;
+            if (top.isFull() && top.worstScore() < 2L * minEdits) break;
+            for (int i = bucketStart[shared]; i < bucketStart[shared + 1]; i++) {
+                if (scored++ == FUZZY_MAX_SCORED) break buckets;
+                int id = byShared[i];
+                String key = keys[id];
+                if (key == null) continue;
+                long match = pattern.bestMatch(key);
+                int edits = (int) (match >>> 32);
+                if (edits > maxEdits) continue;
+                int separator = key.indexOf(FIELD_SEPARATOR);
+                boolean inName = separator < 0 || (int) match < separator;
+                top.offer(2L * edits + (inName ? 0 : 1), id);
+            }
+        }
+        return top.sortedIds();
+    }
+
+    private static int[] firstIds(BitSet ids, int limit) {
+        int[] result = new int[Math.min(limit, ids.cardinality())];
+        int count = 0;
+        for (int id = ids.nextSetBit(0); id >= 0 && count < result.length; id = ids.nextSetBit(id + 1)) result[count++] = id;
+        return result;
+    }
+
+    /**
+     * Distancia de edición entre la consulta y el mejor fragmento de un texto, con el algoritmo de vectores
+     * de bits de Myers: una columna de la matriz de programación dinámica cabe en un long y cada carácter
+     * del texto se procesa con unas pocas operaciones.
+     */
+    private static final class FuzzyPattern {
+        private final int length;
+        private final long lastBit;
+        private final long[] asciiMasks = new long[128];
+        private final char[] otherChars;
+        private final long[] otherMasks;
+
+        FuzzyPattern(String query) {
+            length = query.length();
+            lastBit = 1L << (length - 1);
+            char[] chars = new char[length];
+            long[] masks = new long[length];
+            int others = 0;
+            for (int i = 0; i < length; i++) {
+                char c = query.charAt(i);
+                if (c < 128) {
+                    asciiMasks[c] |= 1L << i;
+                    continue;
+                }
+                int slot = 0;
+                while (slot < others && chars[slot] != c) slot++;
+                if (slot == others) chars[others++] = c;
+                masks[slot] |= 1L << i;
+            }
+            otherChars = Arrays.copyOf(chars, others);
+            otherMasks = Arrays.copyOf(masks, others);
+        }
+
+        private long mask(char c) {
+            if (c < 128) return asciiMasks[c];
+            for (int i = 0; i < otherChars.length; i++) {
+                if (otherChars[i] == c) return otherMasks[i];
+            }
+            return 0;
+        }
+
+        /** Menor distancia y posición donde termina ese fragmento, como (distancia << 32) | fin. */
+        long bestMatch(String text) {
+            long pv = -1L, mv = 0;
+            int score = length, best = length, bestEnd = -1;
+            for (int j = 0; j < text.length(); j++) {
+                long eq = mask(text.charAt(j));
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                if ((ph & lastBit) != 0) score++;
+                else if ((mh & lastBit) != 0) score--;
+                // Sin arrastrar un 1 en la fila 0: el fragmento puede empezar en cualquier posición.
+                ph <<= 1;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+                if (score < best) {
+                    best = score;
+                    bestEnd = j;
+                    if (best == 0) break;
+                }
+            }
+            return ((long) best << 32) | (bestEnd & 0xffffffffL);
+        }
+    }
+
+    /**
+     * Los limit mejores (puntuación, ID) vistos hasta ahora, en un montículo de máximos: la raíz es el peor
+     * y es el que se sustituye cuando llega uno mejor.
+     */
+    private static final class TopK {
+        private final long[] heap;
+        private int count;
+
+        TopK(int limit) {
+            heap = new long[limit];
+        }
+
+        boolean isFull() {
+            return count == heap.length;
+        }
+
+        long worstScore() {
+            return heap[0] >>> 32;
+        }
+
+        void offer(long score, int id) {
+            long entry = (score << 32) | id;
+            if (count < heap.length) {
+                int i = count++;
+                while (i > 0 && heap[(i - 1) >>> 1] < entry) {
+                    heap[i] = heap[(i - 1) >>> 1];
+                    i = (i - 1) >>> 1;
+                }
+                heap[i] = entry;
+            } else if (entry < heap[0]) {
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= count) break;
+                    if (child + 1 < count && heap[child + 1] > heap[child]) child++;
+                    if (heap[child] <= entry) break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = entry;
+            }
+        }
+
+        int[] sortedIds() {
+            long[] entries = Arrays.copyOf(heap, count);
+            Arrays.sort(entries);
+            int[] ids = new int[count];
+            for (int i = 0; i < count; i++) ids[i] = (int) entries[i];
+            return ids;
+        }
+    }
+
+    private Postings postingsFor(long gram, boolean create) {
+        int mask = gramKeys.length - 1;
+        int slot = hash(gram) & mask;
+        while (gramLists[slot] != null) {
+            if (gramKeys[slot] == gram) return gramLists[slot];
+            slot = (slot + 1) & mask;
+        }
+        if (!create) return null;
+        Postings list = new Postings();
+        gramKeys[slot] = gram;
+        gramLists[slot] = list;
+        if (++gramCount * 2 > gramKeys.length) grow();
+        return list;
+    }
+
+    private void grow() {
+        long[] oldKeys = gramKeys;
+        Postings[] oldLists = gramLists;
+        gramKeys = new long[oldKeys.length * 2];
+        gramLists = new Postings[oldLists.length * 2];
+        int mask = gramKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldLists[i] == null) continue;
+            int slot = hash(oldKeys[i]) & mask;
+            while (gramLists[slot] != null) slot = (slot + 1) & mask;
+            gramKeys[slot] = oldKeys[i];
+            gramLists[slot] = oldLists[i];
+        }
+    }
+
+    private static int hash(long gram) {
+        long h = gram * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Trigramas distintos del texto, sin los que atraviesan un separador de campo. */
+    private static long[] trigrams(String text) {
+        int n = text.length() - GRAM + 1;
+        if (n <= 0) return new long[0];
+        long[] grams = new long[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            char a = text.charAt(i), b = text.charAt(i + 1), c = text.charAt(i + 2);
+            if (a == FIELD_SEPARATOR || b == FIELD_SEPARATOR || c == FIELD_SEPARATOR) continue;
+            grams[count++] = ((long) a << 32) | ((long) b << 16) | c;
+        }
+        Arrays.sort(grams, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || grams[unique - 1] != grams[i]) grams[unique++] = grams[i];
+        }
+        return Arrays.copyOf(grams, unique);
+    }
+}
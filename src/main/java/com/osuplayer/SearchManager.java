@@ -1,77 +1,198 @@
 package com.osuplayer;
 
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
 import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
+import javafx.scene.control.ToggleButton;
 
+/**
+ * Filtra la lista de canciones según el campo de búsqueda. La consulta se evalúa en un hilo en segundo plano
+ * cuando se deja de escribir durante un momento, y si llega otra antes la anterior se descarta. El resultado
+ * se aplica a la lista de una sola vez en el hilo de JavaFX.
+ *
+ * En modo aproximado se toleran errores de escritura: se muestran las mejores coincidencias ordenadas por
+ * relevancia en lugar de en el orden de la lista.
+ */
 public class SearchManager {
 
+    private static final long DEBOUNCE_MILLIS = 120;
+    private static final int FUZZY_RESULTS = 200;
+
     private final MusicManager musicManager;
     private FilteredList<String> filteredSongList;
+    private SortedList<String> sortedSongList;
+    private boolean fuzzy;
+    private TextField searchField;
+    private ListView<String> songListView;
+    private Label currentSongLabel;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "search");
+        t.setDaemon(true);
+        return t;
+    });
+    private ScheduledFuture<?> pendingSearch;
+    // Número de la última consulta pedida: un resultado solo se aplica si sigue siendo el último.
+    private long generation;
+
+    // Copia de la lista sin filtrar, para buscar en segundo plano la posición de la canción actual.
+    // Se descarta cuando la lista cambia y se vuelve a hacer en la siguiente búsqueda.
+    private String[] sourceSnapshot;
+    private final ListChangeListener<Object> sourceListener = change -> sourceSnapshot = null;
+
+    /** ranks es la posición de cada coincidencia en modo aproximado, o null en el exacto. */
+    private record Result(long generation, Set<String> matches, Map<String, Integer> ranks, int currentSourceIndex) {}
 
     public SearchManager(MusicManager musicManager) {
         this.musicManager = musicManager;
     }
 
-    public void setFilteredList(FilteredList<String> filteredSongList) {
+    /**
+     * @param sortedSongList la lista que se muestra, construida sobre filteredSongList
+     */
+    public void setFilteredList(FilteredList<String> filteredSongList, SortedList<String> sortedSongList) {
+        if (this.filteredSongList != null) this.filteredSongList.getSource().removeListener(sourceListener);
         this.filteredSongList = filteredSongList;
+        this.sortedSongList = sortedSongList;
+        this.sourceSnapshot = null;
+        if (filteredSongList != null) filteredSongList.getSource().addListener(sourceListener);
     }
 
     public void setupSearchField(
             TextField searchField,
+            ToggleButton fuzzyToggle,
             ListView<String> songListView,
             Label currentSongLabel) {
-        
-        searchField.textProperty().addListener((obs, oldVal, newVal) -> {
-            if (filteredSongList == null) return;
-
-            String lower = newVal == null ? "" : newVal.toLowerCase().trim();
-            
-            filteredSongList.setPredicate(song -> {
-                if (lower.isEmpty()) return true;
-                return song != null && matchesQuery(song, lower);
-            });
-
-            String currentSong = currentSongLabel.getText();
-            if (currentSong != null && !currentSong.isEmpty()) {
-                int index = filteredSongList.indexOf(currentSong);
-                if (index >= 0) {
-                    songListView.getSelectionModel().select(index);
-                    songListView.scrollTo(index);
-                } else {
-                    songListView.getSelectionModel().clearSelection();
-                }
-            }
+
+        this.searchField = searchField;
+        this.songListView = songListView;
+        this.currentSongLabel = currentSongLabel;
+        fuzzy = fuzzyToggle.isSelected();
+        searchField.textProperty().addListener((obs, oldVal, newVal) -> requestSearch(newVal, true));
+        fuzzyToggle.selectedProperty().addListener((obs, oldVal, newVal) -> {
+            fuzzy = newVal;
+            requestSearch(searchField.getText(), true);
         });
     }
 
-    public boolean matchesQuery(String songName, String query) {
-        if (query == null || query.isEmpty()) return true;
-        if (songName == null) return false;
+    /**
+     * Vuelve a evaluar la búsqueda actual porque ha cambiado la biblioteca: el filtro aplicado es el conjunto
+     * de coincidencias de cuando se buscó, y sin esto las canciones nuevas no aparecerían. No cambia la
+     * selección. Si ya hay una búsqueda pendiente, esa verá los cambios.
+     */
+    public void refresh() {
+        if (searchField == null || searchField.getText() == null || searchField.getText().isBlank()) return;
+        if (pendingSearch != null && !pendingSearch.isDone()) return;
+        requestSearch(searchField.getText(), false);
+    }
 
-        // 1. Buscar en "Artista - Título"
-        String lowerCaseSong = songName.toLowerCase();
-        if (lowerCaseSong.contains(query)) return true;
+    private void requestSearch(String text, boolean select) {
+        if (filteredSongList == null) return;
 
-        // 2. Buscar en la lista de Creadores
-        List<String> creators = musicManager.getCreators(songName);
-        if (creators != null) {
-            for (String creator : creators) {
-                if (creator.toLowerCase().contains(query)) return true;
-            }
+        String query = text == null ? "" : text.trim();
+        String currentSong = currentSongLabel.getText();
+        boolean fuzzyQuery = fuzzy;
+        long requested = ++generation;
+        if (pendingSearch != null) pendingSearch.cancel(false);
+        pendingSearch = null;
+
+        // Sin consulta no hay nada que evaluar: se muestra todo al momento.
+        if (query.isEmpty()) {
+            sortedSongList.setComparator(null);
+            filteredSongList.setPredicate(null);
+            selectCurrentSong(currentSong, -1);
+            return;
+        }
+
+        String[] source = snapshotSource();
+        pendingSearch = executor.schedule(() -> {
+            Result result = evaluate(requested, query, fuzzyQuery, source, currentSong);
+            Platform.runLater(() -> apply(result, select ? currentSong : null));
+        }, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * En el hilo de búsqueda: el índice de trigramas da las coincidencias, y la posición de la canción actual
+     * en la lista sin filtrar se busca en la copia, no en la lista de JavaFX.
+     */
+    private Result evaluate(long requested, String query, boolean fuzzyQuery, String[] source, String currentSong) {
+        Set<String> matches = null;
+        Map<String, Integer> ranks = null;
+        if (fuzzyQuery) {
+            List<String> ranked = musicManager.fuzzySearch(query, FUZZY_RESULTS);
+            ranks = new HashMap<>(ranked.size() * 2);
+            for (int i = 0; i < ranked.size(); i++) ranks.put(ranked.get(i), i);
+        } else {
+            matches = musicManager.findSongs(query);
         }
-        
-        // 3. Buscar en la lista de Tags
-        List<String> tags = musicManager.getTags(songName);
-        if (tags != null) {
-            for (String tag : tags) {
-                if (tag.toLowerCase().contains(query)) return true;
+        int currentIndex = -1;
+        if (currentSong != null && !currentSong.isEmpty()) {
+            for (int i = 0; i < source.length; i++) {
+                if (currentSong.equals(source[i])) {
+                    currentIndex = i;
+                    break;
+                }
             }
         }
-        
-        return false;
+        return new Result(requested, matches, ranks, currentIndex);
+    }
+
+    /** currentSong es null si no hay que tocar la selección. */
+    private void apply(Result result, String currentSong) {
+        if (result.generation() != generation || filteredSongList == null) return;
+        Map<String, Integer> ranks = result.ranks();
+        if (ranks != null) {
+            filteredSongList.setPredicate(ranks::containsKey);
+            sortedSongList.setComparator(Comparator.comparingInt(ranks::get));
+        } else {
+            sortedSongList.setComparator(null);
+            filteredSongList.setPredicate(result.matches()::contains);
+        }
+        selectCurrentSong(currentSong, result.currentSourceIndex());
+    }
+
+    /**
+     * Selecciona la canción actual si sigue en la lista filtrada. sourceIndex es su posición en la lista sin
+     * filtrar si ya se conoce, o -1; con ella la posición visible sale de las propias listas sin recorrerlas.
+     */
+    private void selectCurrentSong(String currentSong, int sourceIndex) {
+        if (currentSong == null || currentSong.isEmpty()) return;
+        List<? extends String> source = filteredSongList.getSource();
+        if (sourceIndex < 0 || sourceIndex >= source.size() || !currentSong.equals(source.get(sourceIndex))) {
+            sourceIndex = source.indexOf(currentSong);
+        }
+        int filteredIndex = sourceIndex >= 0 ? filteredSongList.getViewIndex(sourceIndex) : -1;
+        int index = filteredIndex >= 0 ? sortedSongList.getViewIndex(filteredIndex) : -1;
+        if (index >= 0) {
+            songListView.getSelectionModel().select(index);
+            songListView.scrollTo(index);
+        } else {
+            songListView.getSelectionModel().clearSelection();
+        }
+    }
+
+    private String[] snapshotSource() {
+        if (sourceSnapshot == null) sourceSnapshot = filteredSongList.getSource().toArray(new String[0]);
+        return sourceSnapshot;
+    }
+
+    public boolean matchesQuery(String songName, String query) {
+        if (query == null || query.isEmpty()) return true;
+        if (songName == null) return false;
+        return musicManager.matchesSearch(songName, query);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,298 @@
+package com.osuplayer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Playlists inteligentes: se guarda una regla y las canciones que la cumplen se mantienen solas. La regla
+ * usa la sintaxis de la búsqueda ({@link SongQuery}) más dos condiciones que dependen del uso:
+ *
+ * <pre>
+ *   tag:tech played&gt;30          tag tech y sin escuchar en los últimos 30 días
+ *   creator:"Some Mapper" fav:yes  de ese mapper y en favoritos
+ * </pre>
+ *
+ * played compara los días desde la última vez que se escuchó (una canción nunca escuchada cuenta como
+ * infinitos) y fav admite yes/no. Todas las condiciones deben cumplirse.
+ *
+ * Las canciones de cada playlist se calculan una vez al cargar la biblioteca o al cambiar la regla; después
+ * solo se vuelven a comprobar las canciones afectadas por cada cambio (canciones añadidas o quitadas de la
+ * biblioteca, favoritos, reproducciones). Para las reglas con played se guarda cuándo cambiará cada canción
+ * solo por el paso del tiempo, y se aplica al pedir la playlist.
+ */
+public class SmartPlaylistManager {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Regla ya analizada. libraryQuery es la parte que evalúa la biblioteca; favorite es null si no importa;
+     * minDays y maxDays limitan los días desde la última reproducción, ambos incluidos.
+     */
+    record Rule(String definition, String libraryQuery, Boolean favorite, double minDays, double maxDays) {
+
+        boolean usesPlayed() {
+            return minDays > Double.NEGATIVE_INFINITY || maxDays < Double.POSITIVE_INFINITY;
+        }
+
+        static Rule parse(String definition) {
+            StringBuilder libraryQuery = new StringBuilder();
+            Boolean favorite = null;
+            double minDays = Double.NEGATIVE_INFINITY;
+            double maxDays = Double.POSITIVE_INFINITY;
+            for (String token : SongQuery.tokenize(definition)) {
+                String lower = token.toLowerCase(Locale.ROOT);
+                Boolean fav = parseFavorite(lower);
+                double[] days = fav == null ? parseDays(lower) : null;
+                if (fav != null) {
+                    favorite = fav;
+                } else if (days != null) {
+                    minDays = Math.max(minDays, days[0]);
+                    maxDays = Math.min(maxDays, days[1]);
+                } else {
+                    if (libraryQuery.length() > 0) libraryQuery.append(' ');
+                    libraryQuery.append(token);
+                }
+            }
+            return new Rule(definition.trim(), libraryQuery.toString(), favorite, minDays, maxDays);
+        }
+
+        private static Boolean parseFavorite(String token) {
+            String value;
+            if (token.startsWith("fav:")) value = token.substring(4);
+            else if (token.startsWith("favorite:")) value = token.substring(9);
+            else return null;
+            return switch (value) {
+                case "yes", "si", "sí", "true" -> Boolean.TRUE;
+                case "no", "false" -> Boolean.FALSE;
+                default -> null;
+            };
+        }
+
+        private static double[] parseDays(String token) {
+            if (!token.startsWith("played")) return null;
+            String rest = token.substring("played".length());
+            String operator = rest.startsWith(">=") || rest.startsWith("<=") ? rest.substring(0, 2)
+                    : rest.isEmpty() ? "" : rest.substring(0, 1);
+            if (operator.isEmpty() || !"<>=:".contains(operator.substring(0, 1))) return null;
+            double days;
+            try {
+                days = Double.parseDouble(rest.substring(operator.length()));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            return switch (operator) {
+                case ">" -> new double[] { Math.nextUp(days), Double.POSITIVE_INFINITY };
+                case ">=" -> new double[] { days, Double.POSITIVE_INFINITY };
+                case "<" -> new double[] { Double.NEGATIVE_INFINITY, Math.nextDown(days) };
+                case "<=" -> new double[] { Double.NEGATIVE_INFINITY, days };
+                default -> new double[] { days, days };
+            };
+        }
+    }
+
+    /** Momento en que una canción puede entrar o salir de una playlist solo porque pasa el tiempo. */
+    private record Transition(long time, String song) {}
+
+    private static final class SmartPlaylist {
+        Rule rule;
+        final LinkedHashSet<String> songs = new LinkedHashSet<>();
+        // Ordenadas por momento; cada canción tiene como mucho una, la de transitionBySong.
+        final TreeSet<Transition> transitions = new TreeSet<>(
+                Comparator.comparingLong(Transition::time).thenComparing(Transition::song));
+        final Map<String, Transition> transitionBySong = new HashMap<>();
+
+        SmartPlaylist(Rule rule) {
+            this.rule = rule;
+        }
+    }
+
+    private final ConfigManager configManager;
+    private final MusicManager musicManager;
+    private final FavoritesManager favoritesManager;
+
+    private final Map<String, SmartPlaylist> playlists = new HashMap<>();
+    private final Map<String, Long> lastPlayed;
+    private Consumer<String> onPlaylistChanged;
+
+    public SmartPlaylistManager(ConfigManager configManager, MusicManager musicManager, FavoritesManager favoritesManager) {
+        this.configManager = configManager;
+        this.musicManager = musicManager;
+        this.favoritesManager = favoritesManager;
+        this.lastPlayed = configManager.getLastPlayedTimes();
+        for (Map.Entry<String, String> entry : configManager.getSmartPlaylists().entrySet()) {
+            playlists.put(entry.getKey(), new SmartPlaylist(Rule.parse(entry.getValue())));
+        }
+        favoritesManager.addChangeListener(this::favoriteChanged);
+    }
+
+    /** Se llama con el nombre de la playlist cada vez que cambian sus canciones. */
+    public void setOnPlaylistChanged(Consumer<String> onPlaylistChanged) {
+        this.onPlaylistChanged = onPlaylistChanged;
+    }
+
+    public boolean isSmartPlaylist(String name) {
+        return name != null && playlists.containsKey(name);
+    }
+
+    /** Nombres de las playlists inteligentes, en orden alfabético como las del usuario. */
+    public List<String> getNames() {
+        List<String> names = new ArrayList<>(playlists.keySet());
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+        return names;
+    }
+
+    public String getRule(String name) {
+        SmartPlaylist playlist = playlists.get(name);
+        return playlist != null ? playlist.rule.definition() : null;
+    }
+
+    /** Crea o cambia una playlist inteligente y calcula sus canciones. */
+    public void setRule(String name, String definition) {
+        Rule rule = Rule.parse(definition);
+        SmartPlaylist playlist = playlists.computeIfAbsent(name.trim(), k -> new SmartPlaylist(rule));
+        playlist.rule = rule;
+        configManager.setSmartPlaylist(name.trim(), rule.definition());
+        evaluate(name.trim(), playlist);
+    }
+
+    public void delete(String name) {
+        if (playlists.remove(name) != null) configManager.removeSmartPlaylist(name);
+    }
+
+    /** Canciones de la playlist, tras aplicar los cambios que ya tocan por el paso del tiempo. */
+    public Collection<String> getSongs(String name) {
+        SmartPlaylist playlist = playlists.get(name);
+        if (playlist == null) return Collections.emptyList();
+        long now = System.currentTimeMillis();
+        while (!playlist.transitions.isEmpty() && playlist.transitions.first().time() <= now) {
+            update(playlist, playlist.transitions.first().song(), now);
+        }
+        return Collections.unmodifiableSet(playlist.songs);
+    }
+
+    /**
+     * Calcula de cero todas las playlists. Se usa al terminar de cargar la biblioteca, así que también
+     * olvida las reproducciones de canciones que ya no están en ella.
+     */
+    public void rebuild() {
+        lastPlayed.keySet().removeIf(song -> {
+            if (musicManager.canonicalSongName(song) != null) return false;
+            configManager.removeLastPlayed(song);
+            return true;
+        });
+        for (Map.Entry<String, SmartPlaylist> entry : playlists.entrySet()) {
+            evaluate(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public void songsAdded(Collection<String> added) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, SmartPlaylist> entry : playlists.entrySet()) {
+            boolean changed = false;
+            for (String song : added) changed |= update(entry.getValue(), song, now);
+            if (changed) notifyChanged(entry.getKey());
+        }
+    }
+
+    public void songsRemoved(Collection<String> removed) {
+        for (Map.Entry<String, SmartPlaylist> entry : playlists.entrySet()) {
+            SmartPlaylist playlist = entry.getValue();
+            for (String song : removed) cancelTransition(playlist, song);
+            if (playlist.songs.removeAll(removed)) notifyChanged(entry.getKey());
+        }
+    }
+
+    /** Anota una reproducción y vuelve a comprobar la canción en las reglas que usan played. */
+    public void songPlayed(String song) {
+        long now = System.currentTimeMillis();
+        lastPlayed.put(song, now);
+        configManager.setLastPlayed(song, now);
+        for (Map.Entry<String, SmartPlaylist> entry : playlists.entrySet()) {
+            SmartPlaylist playlist = entry.getValue();
+            if (playlist.rule.usesPlayed() && update(playlist, song, now)) notifyChanged(entry.getKey());
+        }
+    }
+
+    private void favoriteChanged(String song) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, SmartPlaylist> entry : playlists.entrySet()) {
+            SmartPlaylist playlist = entry.getValue();
+            if (playlist.rule.favorite() != null && update(playlist, song, now)) notifyChanged(entry.getKey());
+        }
+    }
+
+    private void evaluate(String name, SmartPlaylist playlist) {
+        long now = System.currentTimeMillis();
+        Rule rule = playlist.rule;
+        Set<String> candidates = rule.libraryQuery().isBlank()
+                ? musicManager.getSongNames()
+                : musicManager.findSongs(rule.libraryQuery());
+        playlist.songs.clear();
+        playlist.transitions.clear();
+        playlist.transitionBySong.clear();
+        for (String song : candidates) {
+            if (matchesState(rule, song, now)) playlist.songs.add(song);
+            scheduleTransition(playlist, song, now);
+        }
+        notifyChanged(name);
+    }
+
+    /** Vuelve a comprobar una canción. Devuelve si ha entrado o salido de la playlist. */
+    private boolean update(SmartPlaylist playlist, String song, long now) {
+        Rule rule = playlist.rule;
+        boolean inLibrary = rule.libraryQuery().isBlank()
+                ? musicManager.canonicalSongName(song) != null
+                : musicManager.matchesSearch(song, rule.libraryQuery());
+        cancelTransition(playlist, song);
+        if (inLibrary) scheduleTransition(playlist, song, now);
+        boolean member = inLibrary && matchesState(rule, song, now);
+        return member ? playlist.songs.add(song) : playlist.songs.remove(song);
+    }
+
+    private boolean matchesState(Rule rule, String song, long now) {
+        if (rule.favorite() != null && favoritesManager.isFavorite(song) != rule.favorite()) return false;
+        if (!rule.usesPlayed()) return true;
+        double days = daysSincePlayed(song, now);
+        return days >= rule.minDays() && days <= rule.maxDays();
+    }
+
+    /** Si la canción entrará o saldrá por el paso del tiempo, anota cuándo. */
+    private void scheduleTransition(SmartPlaylist playlist, String song, long now) {
+        Rule rule = playlist.rule;
+        Long played = lastPlayed.get(song);
+        if (!rule.usesPlayed() || played == null) return;
+        double days = (now - played) / (double) DAY_MILLIS;
+        double next;
+        if (days < rule.minDays()) next = rule.minDays();
+        else if (days <= rule.maxDays() && rule.maxDays() < Double.POSITIVE_INFINITY) next = Math.nextUp(rule.maxDays());
+        else return;
+        Transition transition = new Transition(played + (long) Math.ceil(next * DAY_MILLIS), song);
+        playlist.transitions.add(transition);
+        playlist.transitionBySong.put(song, transition);
+    }
+
+    private void cancelTransition(SmartPlaylist playlist, String song) {
+        Transition pending = playlist.transitionBySong.remove(song);
+        if (pending != null) playlist.transitions.remove(pending);
+    }
+
+    private double daysSincePlayed(String song, long now) {
+        Long played = lastPlayed.get(song);
+        return played == null ? Double.POSITIVE_INFINITY : (now - played) / (double) DAY_MILLIS;
+    }
+
+    private void notifyChanged(String name) {
+        if (onPlaylistChanged != null) onPlaylistChanged.accept(name);
+    }
+}
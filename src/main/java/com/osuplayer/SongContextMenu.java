@@ -0,0 +1,98 @@
+package com.osuplayer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.scene.Node;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Menu;
+import javafx.scene.control.MenuItem;
+
+/**
+ * Menú contextual de las canciones, compartido por todas las celdas de la lista. Se rellena al abrirlo para
+ * la canción pulsada, en lugar de crear un menú por celda cada vez que se reutiliza al desplazarse. Las
+ * opciones de cada playlist se crean una vez y se reutilizan mientras la playlist exista.
+ */
+public class SongContextMenu {
+
+    private final PlaylistManager playlistManager;
+    private final FavoritesManager favoritesManager;
+    private final ExportManager exportManager;
+    private final Runnable refreshUICallback;
+
+    private final ContextMenu contextMenu = new ContextMenu();
+    private final Menu addToPlaylistMenu = new Menu("Añadir a playlist");
+    private final Menu removeFromPlaylistMenu = new Menu("Eliminar de");
+    private final MenuItem exportSongItem = new MenuItem("Exportar canción");
+
+    // Playlists con las que se construyó addToPlaylistMenu, para rehacerlo solo si cambian.
+    private List<String> addMenuPlaylists = List.of();
+    private final Map<String, MenuItem> removeItems = new HashMap<>();
+    private String song;
+
+    public SongContextMenu(PlaylistManager playlistManager, FavoritesManager favoritesManager, ExportManager exportManager, Runnable refreshUICallback) {
+        this.playlistManager = playlistManager;
+        this.favoritesManager = favoritesManager;
+        this.exportManager = exportManager;
+        this.refreshUICallback = refreshUICallback;
+        exportSongItem.setOnAction(e -> exportManager.exportSong(song));
+    }
+
+    public void show(Node anchor, String song, double screenX, double screenY) {
+        this.song = song;
+        updateAddItems();
+
+        List<MenuItem> removeFrom = new ArrayList<>();
+        for (String playlistName : playlistManager.getPlaylistsContaining(song)) {
+            removeFrom.add(removeItems.computeIfAbsent(playlistName, this::createRemoveItem));
+        }
+        removeFromPlaylistMenu.getItems().setAll(removeFrom);
+
+        contextMenu.getItems().setAll(addToPlaylistMenu);
+        if (!removeFrom.isEmpty()) contextMenu.getItems().add(removeFromPlaylistMenu);
+        contextMenu.getItems().add(exportSongItem);
+        contextMenu.show(anchor, screenX, screenY);
+    }
+
+    private void updateAddItems() {
+        List<String> playlists = new ArrayList<>();
+        for (String playlistName : playlistManager.getAllPlaylists()) {
+            if (!playlistManager.isSpecialPlaylist(playlistName)) playlists.add(playlistName);
+        }
+        if (playlists.equals(addMenuPlaylists)) return;
+        addMenuPlaylists = playlists;
+        removeItems.keySet().retainAll(playlistManager.getAllPlaylists());
+
+        MenuItem addFavItem = new MenuItem("Favoritos");
+        addFavItem.setOnAction(e -> {
+            favoritesManager.addFavorite(song);
+            refreshUICallback.run();
+        });
+        List<MenuItem> items = new ArrayList<>();
+        items.add(addFavItem);
+        for (String playlistName : playlists) {
+            MenuItem playlistItem = new MenuItem(playlistName);
+            playlistItem.setOnAction(ev -> {
+                playlistManager.addToPlaylist(playlistName, song);
+                refreshUICallback.run();
+            });
+            items.add(playlistItem);
+        }
+        addToPlaylistMenu.getItems().setAll(items);
+    }
+
+    private MenuItem createRemoveItem(String playlistName) {
+        MenuItem removeFromItem = new MenuItem(playlistName);
+        removeFromItem.setOnAction(e -> {
+            if (playlistName.equals("Favoritos")) {
+                favoritesManager.removeFavorite(song);
+            } else {
+                playlistManager.removeFromPlaylist(playlistName, song);
+            }
+            refreshUICallback.run();
+        });
+        return removeFromItem;
+    }
+}
@@ -0,0 +1,26 @@
+package com.osuplayer;
+
+/**
+ * Campos de la biblioteca por los que se puede ordenar o filtrar.
+ */
+public enum SongField {
+    TITLE(false),
+    ARTIST(false),
+    CREATOR(false),
+    TITLE_UNICODE(false),
+    ARTIST_UNICODE(false),
+    SOURCE(false),
+    BEATMAP_SET_ID(true),
+    PREVIEW_TIME(true),
+    BPM(true);
+
+    private final boolean numeric;
+
+    SongField(boolean numeric) {
+        this.numeric = numeric;
+    }
+
+    public boolean isNumeric() {
+        return numeric;
+    }
+}
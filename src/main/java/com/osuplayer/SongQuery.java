@@ -0,0 +1,172 @@
+package com.osuplayer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.UnaryOperator;
+
+/**
+ * Consulta de búsqueda ya analizada. Además de texto libre admite filtros por campo:
+ *
+ * <pre>
+ *   artist:camellia creator:xxx tag:tech bpm&gt;180 "texto con espacios"
+ * </pre>
+ *
+ * artist, title y source buscan el texto dentro del campo (también en los nombres originales); tag y creator
+ * exigen el valor completo; bpm y set admiten : = &gt; &gt;= &lt; &lt;=. Un campo desconocido o un número
+ * que no se puede leer se tratan como texto libre. Una comilla que forma parte del valor se escribe \".
+ * Los valores de texto se guardan ya normalizados.
+ */
+final class SongQuery {
+
+    enum Kind {
+        /** Texto libre: nombre, nombres originales, fuente, creador y tags (índice de trigramas). */
+        TEXT,
+        ARTIST,
+        TITLE,
+        SOURCE,
+        /** Tag exacto (índice de tags). */
+        TAG,
+        /** Creador exacto (índice de creadores). */
+        CREATOR,
+        /** Rango numérico sobre field; BPM usa su índice ordenado. */
+        RANGE
+    }
+
+    /**
+     * Un filtro. text es el valor normalizado en los filtros de texto; field, min y max solo se usan en RANGE,
+     * con ambos límites incluidos.
+     */
+    record Filter(Kind kind, String text, SongField field, double min, double max) {
+
+        boolean isIndexed() {
+            return kind == Kind.TEXT || kind == Kind.TAG || kind == Kind.CREATOR
+                    || (kind == Kind.RANGE && field == SongField.BPM);
+        }
+    }
+
+    private final List<Filter> filters;
+
+    private SongQuery(List<Filter> filters) {
+        this.filters = filters;
+    }
+
+    List<Filter> filters() {
+        return filters;
+    }
+
+    boolean isEmpty() {
+        return filters.isEmpty();
+    }
+
+    /**
+     * Analiza una consulta. normalizer es la misma normalización que usan las claves de búsqueda.
+     */
+    static SongQuery parse(String query, UnaryOperator<String> normalizer) {
+        List<Filter> filters = new ArrayList<>();
+        StringBuilder freeText = new StringBuilder();
+        for (String token : tokenize(query == null ? "" : query)) {
+            Filter filter = parseFilter(token, normalizer);
+            if (filter != null) {
+                filters.add(filter);
+            } else {
+                if (freeText.length() > 0) freeText.append(' ');
+                freeText.append(unquote(token));
+            }
+        }
+        String text = normalizer.apply(freeText.toString());
+        if (!text.isEmpty()) filters.add(new Filter(Kind.TEXT, text, null, 0, 0));
+        return new SongQuery(List.copyOf(filters));
+    }
+
+    private static Filter parseFilter(String token, UnaryOperator<String> normalizer) {
+        int nameEnd = 0;
+        while (nameEnd < token.length() && Character.isLetter(token.charAt(nameEnd))) nameEnd++;
+        if (nameEnd == 0 || nameEnd == token.length()) return null;
+
+        String name = token.substring(0, nameEnd).toLowerCase(Locale.ROOT);
+        String operator = token.startsWith(">=", nameEnd) || token.startsWith("<=", nameEnd)
+                ? token.substring(nameEnd, nameEnd + 2)
+                : token.substring(nameEnd, nameEnd + 1);
+        if (!":=<>".contains(operator.substring(0, 1))) return null;
+        String value = unquote(token.substring(nameEnd + operator.length()));
+        if (value.isEmpty()) return null;
+
+        Kind kind = switch (name) {
+            case "artist" -> Kind.ARTIST;
+            case "title" -> Kind.TITLE;
+            case "source" -> Kind.SOURCE;
+            case "tag" -> Kind.TAG;
+            case "creator", "mapper" -> Kind.CREATOR;
+            case "bpm", "set" -> Kind.RANGE;
+            default -> null;
+        };
+        if (kind == null) return null;
+
+        if (kind != Kind.RANGE) {
+            if (!operator.equals(":") && !operator.equals("=")) return null;
+            String text = normalizer.apply(value);
+            return text.isEmpty() ? null : new Filter(kind, text, null, 0, 0);
+        }
+
+        double number;
+        try {
+            number = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        SongField field = name.equals("bpm") ? SongField.BPM : SongField.BEATMAP_SET_ID;
+        return switch (operator) {
+            case ">" -> new Filter(kind, null, field, Math.nextUp(number), Double.POSITIVE_INFINITY);
+            case ">=" -> new Filter(kind, null, field, number, Double.POSITIVE_INFINITY);
+            case "<" -> new Filter(kind, null, field, Double.NEGATIVE_INFINITY, Math.nextDown(number));
+            case "<=" -> new Filter(kind, null, field, Double.NEGATIVE_INFINITY, number);
+            default -> new Filter(kind, null, field, number, number);
+        };
+    }
+
+    /** Separa por espacios, salvo dentro de comillas dobles. Las comillas escapadas se dejan como están. */
+    static List<String> tokenize(String query) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '\\' && i + 1 < query.length() && query.charAt(i + 1) == '"') {
+                current.append(c).append('"');
+                i++;
+                continue;
+            }
+            if (c == '"') quoted = !quoted;
+            if (Character.isWhitespace(c) && !quoted) {
+                if (current.length() > 0) tokens.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (current.length() > 0) tokens.add(current.toString());
+        return tokens;
+    }
+
+    /** Quita las comillas que agrupan y deja las escapadas. */
+    private static String unquote(String value) {
+        StringBuilder unquoted = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length() && value.charAt(i + 1) == '"') {
+                unquoted.append('"');
+                i++;
+            } else if (c != '"') {
+                unquoted.append(c);
+            }
+        }
+        return unquoted.toString();
+    }
+
+    /** Escribe un valor para que se lea entero como valor de un filtro: entre comillas si tiene espacios. */
+    static String quote(String value) {
+        String escaped = value.replace("\"", "\\\"");
+        return escaped.chars().anyMatch(Character::isWhitespace) ? '"' + escaped + '"' : escaped;
+    }
+}
@@ -0,0 +1,663 @@
+package com.osuplayer;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * Tabla densa de canciones. Cada canción tiene un ID entero que indexa columnas en arrays,
+ * y la única búsqueda por texto es nombre → ID. Los tags y creadores se guardan una sola vez
+ * en un diccionario compartido, porque se repiten mucho entre beatmaps.
+ *
+ * Al borrar una canción su ID queda libre (hueco) hasta el siguiente {@link #clear()}, de modo que
+ * los IDs existentes no cambian y el orden de inserción se conserva.
+ *
+ * Ordenar y filtrar trabaja sobre arrays de IDs comparando directamente las columnas, sin crear
+ * un objeto por canción. La búsqueda por texto usa un {@link SearchIndex} que se mantiene al añadir,
+ * modificar o borrar canciones, junto con índices exactos de tags y creadores y un orden por BPM para las
+ * consultas con filtros ({@link SongQuery}). Los índices de tags y creadores también dan los recuentos
+ * para explorar la biblioteca por facetas.
+ *
+ * La tabla se modifica en el hilo de JavaFX y las búsquedas pueden ejecutarse en otro: los métodos que
+ * modifican y los de búsqueda están sincronizados; las demás lecturas son del hilo de JavaFX.
+ */
+final class SongTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private String[] folders = new String[INITIAL_CAPACITY];
+    private String[] titles = new String[INITIAL_CAPACITY];
+    private String[] artists = new String[INITIAL_CAPACITY];
+    private String[] audioFiles = new String[INITIAL_CAPACITY];
+    private String[] creators = new String[INITIAL_CAPACITY];
+    private List<?>[] tags = new List<?>[INITIAL_CAPACITY];
+    private String[] backgrounds = new String[INITIAL_CAPACITY];
+    private String[] videos = new String[INITIAL_CAPACITY];
+    private String[] titleUnicodes = new String[INITIAL_CAPACITY];
+    private String[] artistUnicodes = new String[INITIAL_CAPACITY];
+    private String[] sources = new String[INITIAL_CAPACITY];
+    private int[] beatmapSetIds = new int[INITIAL_CAPACITY];
+    private int[] previewTimes = new int[INITIAL_CAPACITY];
+    private double[] bpms = new double[INITIAL_CAPACITY];
+    // Archivos de fondo y vídeo encontrados en la carpeta, y la fecha de la carpeta cuando se comprobaron.
+    private String[] coverFiles = new String[INITIAL_CAPACITY];
+    private String[] videoFiles = new String[INITIAL_CAPACITY];
+    private long[] mediaStamps = new long[INITIAL_CAPACITY];
+
+    private int size;
+    private int liveCount;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Map<String, String> dictionary = new HashMap<>();
+
+    private static final int CACHED_PLANS = 64;
+
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final ValueIndex tagIndex = new ValueIndex();
+    private final ValueIndex creatorIndex = new ValueIndex();
+    // Valor normalizado de cada tag o creador (ya internados), para no normalizar el mismo texto muchas veces.
+    private final Map<String, String> normalizedValues = new HashMap<>();
+    // IDs con BPM ordenados por BPM; se rehace en la primera consulta tras un cambio.
+    private int[] bpmOrder = new int[0];
+    private boolean bpmOrderStale = true;
+
+    // Consultas ya analizadas, por texto. Orden de acceso: al llenarse se descarta la usada hace más tiempo.
+    private final Map<String, SongQuery> plans = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SongQuery> eldest) {
+            return size() > CACHED_PLANS;
+        }
+    };
+    private final NameSet nameSet = new NameSet(null);
+
+    /** Límite superior (exclusivo) de los IDs asignados, incluidos los huecos. */
+    int size() {
+        return size;
+    }
+
+    int liveCount() {
+        return liveCount;
+    }
+
+    boolean isLive(int id) {
+        return id >= 0 && id < size && names[id] != null;
+    }
+
+    int idOf(String name) {
+        if (name == null) return -1;
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Añade una canción al final y devuelve su ID. Si el nombre ya existe devuelve -1 sin modificar nada.
+     */
+    synchronized int add(String folder, OsuFileParser.BeatmapMetadata meta) {
+        String name = meta.displayName();
+        if (ids.containsKey(name)) return -1;
+        ensureCapacity(size + 1);
+        int id = size++;
+        names[id] = name;
+        ids.put(name, id);
+        liveCount++;
+        set(id, folder, meta);
+        return id;
+    }
+
+    /**
+     * Reemplaza los datos de una canción existente manteniendo su ID y su nombre.
+     */
+    synchronized void set(int id, String folder, OsuFileParser.BeatmapMetadata meta) {
+        if (tags[id] != null) unindexValues(id);
+        folders[id] = folder;
+        titles[id] = meta.title();
+        artists[id] = meta.artist();
+        audioFiles[id] = meta.audioFilename();
+        creators[id] = intern(meta.creator());
+        tags[id] = internAll(meta.tags());
+        backgrounds[id] = meta.background();
+        videos[id] = meta.video();
+        titleUnicodes[id] = meta.titleUnicode();
+        artistUnicodes[id] = meta.artistUnicode();
+        sources[id] = intern(meta.source());
+        beatmapSetIds[id] = meta.beatmapSetId();
+        previewTimes[id] = meta.previewTime();
+        bpms[id] = meta.bpm();
+        searchIndex.put(id, searchKey(id));
+        indexValues(id);
+        bpmOrderStale = true;
+    }
+
+    /** Fondo y vídeo tal como los declara el .osu, para canciones importadas sin ellos. */
+    synchronized void setDeclaredMedia(int id, String background, String video) {
+        backgrounds[id] = background;
+        videos[id] = video;
+    }
+
+    synchronized void setMedia(int id, String coverFile, String videoFile, long stamp) {
+        coverFiles[id] = coverFile;
+        videoFiles[id] = videoFile;
+        mediaStamps[id] = stamp;
+    }
+
+    synchronized void remove(int id) {
+        if (!isLive(id)) return;
+        unindexValues(id);
+        bpmOrderStale = true;
+        ids.remove(names[id]);
+        names[id] = null;
+        folders[id] = titles[id] = artists[id] = audioFiles[id] = creators[id] = backgrounds[id] = videos[id] = null;
+        coverFiles[id] = videoFiles[id] = null;
+        titleUnicodes[id] = artistUnicodes[id] = sources[id] = null;
+        tags[id] = null;
+        searchIndex.remove(id);
+        liveCount--;
+    }
+
+    synchronized void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(folders, 0, size, null);
+        Arrays.fill(titles, 0, size, null);
+        Arrays.fill(artists, 0, size, null);
+        Arrays.fill(audioFiles, 0, size, null);
+        Arrays.fill(creators, 0, size, null);
+        Arrays.fill(tags, 0, size, null);
+        Arrays.fill(backgrounds, 0, size, null);
+        Arrays.fill(videos, 0, size, null);
+        Arrays.fill(coverFiles, 0, size, null);
+        Arrays.fill(videoFiles, 0, size, null);
+        Arrays.fill(titleUnicodes, 0, size, null);
+        Arrays.fill(artistUnicodes, 0, size, null);
+        Arrays.fill(sources, 0, size, null);
+        size = 0;
+        liveCount = 0;
+        ids.clear();
+        dictionary.clear();
+        searchIndex.clear();
+        tagIndex.clear();
+        creatorIndex.clear();
+        normalizedValues.clear();
+        bpmOrderStale = true;
+    }
+
+    String name(int id) { return names[id]; }
+    String folder(int id) { return folders[id]; }
+    String title(int id) { return titles[id]; }
+    String artist(int id) { return artists[id]; }
+    String audioFile(int id) { return audioFiles[id]; }
+    String creator(int id) { return creators[id]; }
+    String background(int id) { return backgrounds[id]; }
+    String video(int id) { return videos[id]; }
+    String coverFile(int id) { return coverFiles[id]; }
+    String videoFile(int id) { return videoFiles[id]; }
+    long mediaStamp(int id) { return mediaStamps[id]; }
+    String titleUnicode(int id) { return titleUnicodes[id]; }
+    String artistUnicode(int id) { return artistUnicodes[id]; }
+    String source(int id) { return sources[id]; }
+    int beatmapSetId(int id) { return beatmapSetIds[id]; }
+    int previewTime(int id) { return previewTimes[id]; }
+    double bpm(int id) { return bpms[id]; }
+
+    @SuppressWarnings("unchecked")
+    List<String> tags(int id) {
+        List<?> list = tags[id];
+        return list != null ? (List<String>) list : List.of();
+    }
+
+    List<String> creators(int id) {
+        String creator = creators[id];
+        return creator == null || creator.isEmpty() ? List.of() : List.of(creator);
+    }
+
+    OsuFileParser.BeatmapMetadata metadata(int id) {
+        return new OsuFileParser.BeatmapMetadata(titles[id], artists[id], audioFiles[id], creators[id], tags(id), backgrounds[id], videos[id],
+                titleUnicodes[id], artistUnicodes[id], sources[id], beatmapSetIds[id], previewTimes[id], bpms[id]);
+    }
+
+    /** IDs vivos en orden de ID. */
+    int[] liveIds() {
+        int[] result = new int[liveCount];
+        int count = 0;
+        for (int id = 0; id < size; id++) {
+            if (names[id] != null) result[count++] = id;
+        }
+        return result;
+    }
+
+    int[] filterIds(IntPredicate predicate) {
+        int[] result = new int[liveCount];
+        int count = 0;
+        for (int id = 0; id < size; id++) {
+            if (names[id] != null && predicate.test(id)) result[count++] = id;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Valor numérico de un campo, o NaN si el campo es de texto o la canción no lo tiene.
+     */
+    double numericValue(int id, SongField field) {
+        return switch (field) {
+            case BEATMAP_SET_ID -> beatmapSetIds[id] >= 0 ? beatmapSetIds[id] : Double.NaN;
+            case PREVIEW_TIME -> previewTimes[id] >= 0 ? previewTimes[id] : Double.NaN;
+            case BPM -> bpms[id] > 0 ? bpms[id] : Double.NaN;
+            default -> Double.NaN;
+        };
+    }
+
+    String textValue(int id, SongField field) {
+        return switch (field) {
+            case TITLE -> titles[id];
+            case ARTIST -> artists[id];
+            case CREATOR -> creators[id];
+            case TITLE_UNICODE -> titleUnicodes[id];
+            case ARTIST_UNICODE -> artistUnicodes[id];
+            case SOURCE -> sources[id];
+            default -> null;
+        };
+    }
+
+    /**
+     * Ordena los IDs por un campo. Los valores que faltan van al final en ambos sentidos y,
+     * a igualdad, se mantiene el orden de entrada.
+     */
+    void sortIds(int[] ids, SongField field, boolean descending) {
+        int sign = descending ? -1 : 1;
+        IdComparator comparator = field.isNumeric()
+                ? (a, b) -> compareMissingLast(numericValue(a, field), numericValue(b, field), sign)
+                : (a, b) -> compareMissingLast(textValue(a, field), textValue(b, field), sign);
+        mergeSort(ids, new int[ids.length], 0, ids.length, comparator);
+    }
+
+    @FunctionalInterface
+    private interface IdComparator {
+        int compare(int a, int b);
+    }
+
+    private static int compareMissingLast(double a, double b, int sign) {
+        boolean missingA = Double.isNaN(a), missingB = Double.isNaN(b);
+        if (missingA || missingB) return Boolean.compare(missingA, missingB);
+        return sign * Double.compare(a, b);
+    }
+
+    private static int compareMissingLast(String a, String b, int sign) {
+        boolean missingA = a == null || a.isEmpty(), missingB = b == null || b.isEmpty();
+        if (missingA || missingB) return Boolean.compare(missingA, missingB);
+        return sign * a.compareToIgnoreCase(b);
+    }
+
+    private static void mergeSort(int[] ids, int[] buffer, int from, int to, IdComparator comparator) {
+        if (to - from <= 16) {
+            for (int i = from + 1; i < to; i++) {
+                int value = ids[i];
+                int j = i - 1;
+                while (j >= from && comparator.compare(ids[j], value) > 0) {
+                    ids[j + 1] = ids[j];
+                    j--;
+                }
+                ids[j + 1] = value;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(ids, buffer, from, mid, comparator);
+        mergeSort(ids, buffer, mid, to, comparator);
+        if (comparator.compare(ids[mid - 1], ids[mid]) <= 0) return;
+
+        System.arraycopy(ids, from, buffer, from, to - from);
+        int left = from, right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < mid && comparator.compare(buffer[left], buffer[right]) <= 0)) ids[i] = buffer[left++];
+            else ids[i] = buffer[right++];
+        }
+    }
+
+    /**
+     * Vista de solo lectura de los nombres vivos, en orden de ID y con contains en O(1).
+     */
+    Set<String> nameSet() {
+        return nameSet;
+    }
+
+    /** Como {@link #nameSet()}, pero limitada a los IDs indicados. */
+    Set<String> nameSet(BitSet selected) {
+        return new NameSet(selected);
+    }
+
+    /**
+     * IDs de las canciones que cumplen una consulta, con texto libre y filtros por campo ({@link SongQuery}).
+     * El resultado es nuevo o compartido con la caché del índice: no se debe modificar.
+     *
+     * Los filtros con índice se ejecutan del más selectivo al menos: el primero da el conjunto inicial y
+     * los demás se intersectan con él, o se comprueban canción a canción si quedan ya pocas. Los filtros
+     * sin índice se comprueban al final solo sobre las que quedan.
+     */
+    synchronized BitSet query(String query) {
+        SongQuery plan = plan(query);
+        if (plan.isEmpty()) return liveBits();
+
+        List<SongQuery.Filter> indexed = new ArrayList<>();
+        List<SongQuery.Filter> verified = new ArrayList<>();
+        for (SongQuery.Filter filter : plan.filters()) (filter.isIndexed() ? indexed : verified).add(filter);
+        int[] estimates = new int[indexed.size()];
+        Integer[] order = new Integer[indexed.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            estimates[i] = estimate(indexed.get(i));
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(estimates[a], estimates[b]));
+
+        BitSet result = null;
+        for (int i : order) {
+            SongQuery.Filter filter = indexed.get(i);
+            if (result == null) {
+                result = (BitSet) lookup(filter).clone();
+            } else if (result.cardinality() < estimates[i] / 8) {
+                retain(result, filter);
+            } else {
+                result.and(lookup(filter));
+            }
+            if (result.isEmpty()) return result;
+        }
+        if (result == null) result = liveBits();
+        for (SongQuery.Filter filter : verified) retain(result, filter);
+        return result;
+    }
+
+    /** Si una canción cumple la consulta, con los mismos criterios que {@link #query(String)}. */
+    synchronized boolean matches(int id, String query) {
+        if (!isLive(id)) return false;
+        for (SongQuery.Filter filter : plan(query).filters()) {
+            if (!test(filter, id)) return false;
+        }
+        return true;
+    }
+
+    /** IDs de las mejores coincidencias aproximadas, de mejor a peor. Ver {@link SearchIndex#fuzzySearch}. */
+    synchronized int[] fuzzySearch(String query, int limit) {
+        return searchIndex.fuzzySearch(query, limit);
+    }
+
+    /**
+     * Tags (o creadores) presentes en la selección con el número de canciones de cada uno, de más a menos.
+     * Se calcula intersectando el conjunto de cada valor con la selección.
+     */
+    synchronized List<ValueIndex.Count> facets(boolean creatorFacets, BitSet selection, int limit) {
+        return (creatorFacets ? creatorIndex : tagIndex).counts(selection, limit);
+    }
+
+    /** IDs de los nombres indicados; los que no están en la biblioteca se ignoran. */
+    BitSet idsOf(Iterable<String> selectedNames) {
+        BitSet bits = new BitSet(size);
+        for (String name : selectedNames) {
+            int id = idOf(name);
+            if (id >= 0) bits.set(id);
+        }
+        return bits;
+    }
+
+    /** Nombres de los IDs indicados, leídos de forma segura desde otro hilo. Los IDs borrados dan null. */
+    synchronized String[] names(int[] selected) {
+        String[] result = new String[selected.length];
+        for (int i = 0; i < selected.length; i++) result[i] = isLive(selected[i]) ? names[selected[i]] : null;
+        return result;
+    }
+
+    /** Normaliza una consulta igual que las claves del índice. */
+    String normalizeQuery(String query) {
+        return searchIndex.normalize(query);
+    }
+
+    /** Cambia la normalización del texto de búsqueda y vuelve a calcular las claves de todas las canciones. */
+    synchronized void setSearchNormalization(SearchIndex.Normalization normalization) {
+        if (normalization.equals(searchIndex.normalization())) return;
+        searchIndex.setNormalization(normalization);
+        tagIndex.clear();
+        creatorIndex.clear();
+        normalizedValues.clear();
+        plans.clear();
+        for (int id = 0; id < size; id++) {
+            if (names[id] == null) continue;
+            searchIndex.put(id, searchKey(id));
+            indexValues(id);
+        }
+    }
+
+    private SongQuery plan(String query) {
+        SongQuery plan = plans.get(query);
+        if (plan == null) {
+            plan = SongQuery.parse(query, searchIndex::normalize);
+            plans.put(query, plan);
+        }
+        return plan;
+    }
+
+    /** Número aproximado de canciones que deja pasar un filtro con índice, para decidir el orden. */
+    private int estimate(SongQuery.Filter filter) {
+        return switch (filter.kind()) {
+            case TEXT -> searchIndex.estimate(filter.text());
+            case TAG -> tagIndex.count(filter.text());
+            case CREATOR -> creatorIndex.count(filter.text());
+            case RANGE -> {
+                int[] range = bpmRange(filter.min(), filter.max());
+                yield range[1] - range[0];
+            }
+            default -> liveCount;
+        };
+    }
+
+    /** Canciones que deja pasar un filtro con índice. Puede ser compartido: no se debe modificar. */
+    private BitSet lookup(SongQuery.Filter filter) {
+        return switch (filter.kind()) {
+            case TEXT -> searchIndex.search(filter.text());
+            case TAG -> tagIndex.bits(filter.text());
+            case CREATOR -> creatorIndex.bits(filter.text());
+            default -> {
+                int[] range = bpmRange(filter.min(), filter.max());
+                BitSet bits = new BitSet(size);
+                for (int i = range[0]; i < range[1]; i++) bits.set(bpmOrder[i]);
+                yield bits;
+            }
+        };
+    }
+
+    private void retain(BitSet result, SongQuery.Filter filter) {
+        for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+            if (!test(filter, id)) result.clear(id);
+        }
+    }
+
+    private boolean test(SongQuery.Filter filter, int id) {
+        return switch (filter.kind()) {
+            case TEXT -> searchIndex.matches(id, filter.text());
+            case ARTIST -> containsNormalized(artists[id], filter.text()) || containsNormalized(artistUnicodes[id], filter.text());
+            case TITLE -> containsNormalized(titles[id], filter.text()) || containsNormalized(titleUnicodes[id], filter.text());
+            case SOURCE -> containsNormalized(sources[id], filter.text());
+            case TAG -> {
+                for (String tag : tags(id)) {
+                    if (normalizedValue(tag).equals(filter.text())) yield true;
+                }
+                yield false;
+            }
+            case CREATOR -> creators[id] != null && normalizedValue(creators[id]).equals(filter.text());
+            case RANGE -> {
+                double value = numericValue(id, filter.field());
+                yield value >= filter.min() && value <= filter.max();
+            }
+        };
+    }
+
+    private boolean containsNormalized(String value, String text) {
+        return value != null && searchIndex.normalize(value).contains(text);
+    }
+
+    /** Posiciones [desde, hasta) de bpmOrder con el BPM dentro del rango. */
+    private int[] bpmRange(double min, double max) {
+        if (bpmOrderStale) {
+            bpmOrder = filterIds(id -> bpms[id] > 0);
+            sortIds(bpmOrder, SongField.BPM, false);
+            bpmOrderStale = false;
+        }
+        return new int[] {lowerBound(min, false), lowerBound(max, true)};
+    }
+
+    /** Primera posición con BPM mayor o igual que value (mayor si afterEqual). */
+    private int lowerBound(double value, boolean afterEqual) {
+        int low = 0, high = bpmOrder.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            double bpm = bpms[bpmOrder[mid]];
+            if (bpm < value || (afterEqual && bpm == value)) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private BitSet liveBits() {
+        BitSet bits = new BitSet(size);
+        for (int id = 0; id < size; id++) {
+            if (names[id] != null) bits.set(id);
+        }
+        return bits;
+    }
+
+    private void indexValues(int id) {
+        for (String tag : tags(id)) tagIndex.add(normalizedValue(tag), tag, id);
+        if (creators[id] != null && !creators[id].isEmpty()) creatorIndex.add(normalizedValue(creators[id]), creators[id], id);
+    }
+
+    private void unindexValues(int id) {
+        for (String tag : tags(id)) tagIndex.remove(normalizedValue(tag), id);
+        if (creators[id] != null && !creators[id].isEmpty()) creatorIndex.remove(normalizedValue(creators[id]), id);
+    }
+
+    private String normalizedValue(String value) {
+        String normalized = normalizedValues.get(value);
+        if (normalized == null) {
+            normalized = searchIndex.normalize(value);
+            normalizedValues.put(value, normalized);
+        }
+        return normalized;
+    }
+
+    /** Nombre, nombres originales, fuente, creador y tags, separados para que no se mezclen. */
+    private String searchKey(int id) {
+        StringBuilder key = new StringBuilder(names[id]);
+        appendField(key, artistUnicodes[id]);
+        appendField(key, titleUnicodes[id]);
+        appendField(key, sources[id]);
+        appendField(key, creators[id]);
+        for (String tag : tags(id)) appendField(key, tag);
+        return searchIndex.normalize(key.toString());
+    }
+
+    private static void appendField(StringBuilder key, String value) {
+        if (value != null && !value.isEmpty()) key.append(SearchIndex.FIELD_SEPARATOR).append(value);
+    }
+
+    private String intern(String value) {
+        if (value == null) return null;
+        String existing = dictionary.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    private List<String> internAll(List<String> values) {
+        if (values.isEmpty()) return List.of();
+        String[] interned = new String[values.size()];
+        for (int i = 0; i < interned.length; i++) interned[i] = intern(values.get(i));
+        return List.of(interned);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= names.length) return;
+        int newCapacity = Math.max(capacity, names.length + (names.length >> 1));
+        names = Arrays.copyOf(names, newCapacity);
+        folders = Arrays.copyOf(folders, newCapacity);
+        titles = Arrays.copyOf(titles, newCapacity);
+        artists = Arrays.copyOf(artists, newCapacity);
+        audioFiles = Arrays.copyOf(audioFiles, newCapacity);
+        creators = Arrays.copyOf(creators, newCapacity);
+        tags = Arrays.copyOf(tags, newCapacity);
+        backgrounds = Arrays.copyOf(backgrounds, newCapacity);
+        videos = Arrays.copyOf(videos, newCapacity);
+        coverFiles = Arrays.copyOf(coverFiles, newCapacity);
+        videoFiles = Arrays.copyOf(videoFiles, newCapacity);
+        mediaStamps = Arrays.copyOf(mediaStamps, newCapacity);
+        titleUnicodes = Arrays.copyOf(titleUnicodes, newCapacity);
+        artistUnicodes = Arrays.copyOf(artistUnicodes, newCapacity);
+        sources = Arrays.copyOf(sources, newCapacity);
+        beatmapSetIds = Arrays.copyOf(beatmapSetIds, newCapacity);
+        previewTimes = Arrays.copyOf(previewTimes, newCapacity);
+        bpms = Arrays.copyOf(bpms, newCapacity);
+    }
+
+    private final class NameSet extends AbstractSet<String> {
+        private final BitSet selected;
+        private int selectedCount = -1;
+
+        NameSet(BitSet selected) {
+            this.selected = selected;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof String s)) return false;
+            Integer id = ids.get(s);
+            return id != null && (selected == null || selected.get(id));
+        }
+
+        @Override
+        public int size() {
+            if (selected == null) return liveCount;
+            if (selectedCount < 0) {
+                int count = 0;
+                for (int id = selected.nextSetBit(0); id >= 0 && id < size; id = selected.nextSetBit(id + 1)) {
+                    if (names[id] != null) count++;
+                }
+                selectedCount = count;
+            }
+            return selectedCount;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<>() {
+                private int next = advance(0);
+
+                private int advance(int from) {
+                    while (from < size) {
+                        if (selected != null) {
+                            from = selected.nextSetBit(from);
+                            if (from < 0 || from >= size) return size;
+                        }
+                        if (names[from] != null) return from;
+                        from++;
+                    }
+                    return size;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public String next() {
+                    if (next >= size) throw new NoSuchElementException();
+                    String name = names[next];
+                    next = advance(next + 1);
+                    return name;
+                }
+            };
+        }
+    }
+}
@@ -1,23 +1,33 @@
 package com.osuplayer;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.SplitPane;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -26,6 +36,7 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import uk.co.caprica.vlcj.javafx.videosurface.ImageViewVideoSurface;
 import uk.co.caprica.vlcj.player.base.MediaPlayerEventAdapter;
@@ -35,6 +46,8 @@ public class UIController {
 
     private final ListView<String> songListView = new ListView<>();
     private FilteredList<String> filteredSongList;
+    // Lo que muestra la lista: el filtro de búsqueda y, en la búsqueda aproximada, ordenado por relevancia.
+    private SortedList<String> sortedSongList;
     private final ObservableList<String> masterSongList = FXCollections.observableArrayList();
 
     private final EmbeddedMediaPlayer audioPlayer;
@@ -43,8 +56,10 @@ public class UIController {
     private final MusicManager musicManager;
     private final ConfigManager configManager;
     private final PlaylistManager playlistManager;
+    private final SmartPlaylistManager smartPlaylistManager;
     private final PlaybackManager playbackManager;
     private final PlaylistHelper playlistHelper;
+    private final FacetHelper facetHelper;
     private final VideoVisibilityHelper videoVisibilityHelper;
     private final FavoritesManager favoritesManager;
     private final SearchManager searchManager;
@@ -62,26 +77,62 @@ public class UIController {
 
     private final HistoryManager historyManager = new HistoryManager();
 
+    private static final long LIBRARY_WATCH_DEBOUNCE_MS = 1500;
+    private LibraryWatcher libraryWatcher;
+
+    private final LibraryLoader libraryLoader;
+    private UIHelper.SongOrder songOrder = UIHelper.SongOrder.LIBRARY;
+    private ProgressBar scanProgress;
+    private Label scanStatusLabel;
+    // Última canción a precargar en cuanto aparezca en la biblioteca mientras se escanea.
+    private String pendingLastSong;
+
+    // Las rutas del audio, el vídeo y el fondo se calculan en este hilo: en un .osz hay que extraerlos.
+    private final ExecutorService mediaResolver = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "media-resolver");
+        t.setDaemon(true);
+        return t;
+    });
+    // Solo se aplica la última petición: si se pide otra canción mientras se extrae, la anterior se ignora.
+    private long playRequest;
+    private long coverRequest;
+
+    private record MediaPaths(MusicManager.MediaSource media, String audio, String video) {}
+    private record Cover(MusicManager.MediaSource media, Image image) {}
+
     public UIController(EmbeddedMediaPlayer audioPlayer, EmbeddedMediaPlayer videoPlayer, ConfigManager configManager, MusicManager musicManager) {
         this.audioPlayer = audioPlayer;
         this.videoPlayer = videoPlayer;
         this.configManager = configManager;
         this.musicManager = musicManager;
+        this.musicManager.setScanParallelism(configManager.getScanThreads());
+        this.musicManager.setReadBpm(configManager.isScanBpmEnabled());
+        this.musicManager.setUseOsuDb(configManager.isOsuDbImportEnabled());
+        this.musicManager.setArchiveCacheBytes(configManager.getOszCacheMegabytes() * 1024L * 1024);
+        this.musicManager.setSearchNormalization(configManager.isSearchIgnoreAccents(), configManager.isSearchFoldWidth());
         
         this.coverImageView = createCoverImageView();
         this.videoImageView = createVideoImageView();
         
         this.videoVisibilityHelper = new VideoVisibilityHelper(videoImageView, coverImageView);
         this.playlistManager = new PlaylistManager(configManager);
-        this.favoritesManager = new FavoritesManager(configManager, playlistManager);
+        this.favoritesManager = new FavoritesManager(playlistManager);
+        this.smartPlaylistManager = new SmartPlaylistManager(configManager, musicManager, favoritesManager);
+        playlistManager.setReservedNames(smartPlaylistManager::isSmartPlaylist);
         this.searchManager = new SearchManager(musicManager);
 
         this.playbackManager = new PlaybackManager(audioPlayer, videoPlayer, configManager, this);
-        this.exportManager = new ExportManager(musicManager);
-        this.coverManager = new CoverManager(musicManager);
-        this.playlistHelper = new PlaylistHelper(playlistManager, exportManager);
+        this.exportManager = new ExportManager(musicManager, mediaResolver);
+        this.coverManager = new CoverManager();
+        this.playlistHelper = new PlaylistHelper(playlistManager, smartPlaylistManager, exportManager);
+        this.facetHelper = new FacetHelper(musicManager);
+        this.libraryLoader = new LibraryLoader(musicManager);
 
         this.playlistHelper.setOnPlaylistsChangedCallback(() -> songListView.refresh());
+        this.playlistHelper.setOnImportCollectionsCallback(this::importOsuCollections);
+        this.smartPlaylistManager.setOnPlaylistChanged(name -> {
+            if (name.equals(playlistHelper.getSelectedPlaylist())) loadPlaylistSongs(name);
+        });
 
         videoPlayer.events().addMediaPlayerEventListener(new MediaPlayerEventAdapter() {
             @Override
@@ -134,11 +185,23 @@ public class UIController {
 
         UIHelper.TopBarComponents topBar = UIHelper.createTopBar(primaryStage, this::handleFolderSelection);
         UIHelper.ControlBarComponents controlBar = UIHelper.createControlBar();
+        scanProgress = topBar.scanProgress();
+        scanStatusLabel = topBar.scanStatusLabel();
         
-        searchManager.setupSearchField(topBar.searchField(), songListView, currentSongLabel);
+        topBar.fuzzySearchToggle().setSelected(configManager.isSearchFuzzy());
+        topBar.fuzzySearchToggle().selectedProperty().addListener((obs, oldVal, newVal) -> configManager.setSearchFuzzy(newVal));
+        songOrder = parseSongOrder(configManager.getSongOrder());
+        topBar.songOrderChoice().setValue(songOrder);
+        topBar.songOrderChoice().valueProperty().addListener((obs, oldVal, newVal) -> {
+            songOrder = newVal;
+            configManager.setSongOrder(newVal.name());
+            if ("Todo".equals(playlistHelper.getSelectedPlaylist())) loadPlaylistSongs("Todo");
+        });
+        searchManager.setupSearchField(topBar.searchField(), topBar.fuzzySearchToggle(), songListView, currentSongLabel);
         playbackManager.initializeControls(controlBar.progressSlider(), controlBar.timeLabel(), controlBar.volumeSlider(), controlBar.playPauseButton(), controlBar.shuffleButton(), controlBar.previousButton(), controlBar.stopButton(), controlBar.nextButton());
         
-        songListView.setCellFactory(lv -> new SongListCell(playlistManager, favoritesManager, exportManager, this::refreshUIState));
+        SongContextMenu songContextMenu = new SongContextMenu(playlistManager, favoritesManager, exportManager, this::refreshUIState);
+        songListView.setCellFactory(lv -> new SongListCell(songContextMenu));
         songListView.setOnMouseClicked(event -> {
             if (event.getClickCount() == 2 && event.getButton() == MouseButton.PRIMARY) {
                 playSelectedSong();
@@ -148,6 +211,12 @@ public class UIController {
         mediaContainer = UIHelper.createMediaPanel(mediaDisplayStack, currentSongLabel, favoriteButton);
         
         VBox playlistBox = playlistHelper.initialize(this::selectPlaylist);
+        VBox facetBox = facetHelper.initialize(filter -> {
+            String text = topBar.searchField().getText() == null ? "" : topBar.searchField().getText().trim();
+            topBar.searchField().setText(text.isEmpty() ? filter : text + " " + filter);
+        });
+        playlistBox.getChildren().add(facetBox);
+        VBox.setVgrow(facetBox, Priority.ALWAYS);
         playlistBox.setPadding(new Insets(10));
         playlistBox.setPrefWidth(200);
 
@@ -208,6 +277,134 @@ public class UIController {
         selectPlaylist("Todo");
     }
 
+    private void startLibraryWatcher(File folder) {
+        stopLibraryWatcher();
+        if (!configManager.isLibraryWatchEnabled()) return;
+
+        libraryWatcher = new LibraryWatcher(folder, LIBRARY_WATCH_DEBOUNCE_MS,
+            changedFolders -> {
+                // La lectura de las carpetas se hace en el hilo del vigilante; solo la fusión va al hilo de JavaFX.
+                Map<String, LibraryIndex.Entry> changes = musicManager.rescanFolders(changedFolders);
+                Platform.runLater(() -> {
+                    if (folder.equals(musicManager.getLibraryRoot())) {
+                        applyLibraryDelta(musicManager.applyFolderChanges(changes));
+                    }
+                });
+            },
+            () -> Platform.runLater(() -> {
+                if (folder.equals(musicManager.getLibraryRoot())) loadSongs(folder);
+            }));
+        libraryWatcher.start();
+    }
+
+    private void stopLibraryWatcher() {
+        if (libraryWatcher != null) {
+            libraryWatcher.stop();
+            libraryWatcher = null;
+        }
+    }
+
+    /**
+     * Importa las colecciones del collection.db de osu! como playlists. La lectura y el cálculo de los hashes
+     * que falten se hacen en segundo plano; las playlists se crean todas juntas y se guardan una sola vez.
+     */
+    private void importOsuCollections() {
+        File root = musicManager.getLibraryRoot();
+        if (root == null || libraryLoader.isLoading()) {
+            DialogHelper.showInfo("Importar colecciones", "Espera a que termine de cargarse la carpeta Songs.");
+            return;
+        }
+        File dbFile = CollectionDbReader.locate(root);
+        if (dbFile == null) {
+            FileChooser chooser = new FileChooser();
+            chooser.setTitle("Selecciona collection.db");
+            chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Colecciones de osu!", "*.db"));
+            dbFile = chooser.showOpenDialog(songListView.getScene().getWindow());
+            if (dbFile == null) return;
+        }
+
+        File source = dbFile;
+        List<String> unhashedFolders = musicManager.getUnhashedFolders();
+        Thread worker = new Thread(() -> {
+            List<CollectionDbReader.Collection> collections;
+            try {
+                collections = CollectionDbReader.read(source);
+            } catch (IOException e) {
+                System.err.println("No se pudo leer " + source.getAbsolutePath() + ": " + e.getMessage());
+                Platform.runLater(() -> DialogHelper.showInfo("Importar colecciones", "No se pudo leer " + source.getName() + "."));
+                return;
+            }
+            Map<String, String> hashes = musicManager.hashBeatmapFolders(unhashedFolders);
+
+            Platform.runLater(() -> {
+                if (!root.equals(musicManager.getLibraryRoot())) return;
+                musicManager.addBeatmapHashes(hashes, unhashedFolders);
+
+                Map<String, List<String>> imported = new LinkedHashMap<>();
+                int songCount = 0;
+                for (CollectionDbReader.Collection collection : collections) {
+                    List<String> songs = musicManager.songsForHashes(collection.beatmapHashes());
+                    imported.computeIfAbsent(collection.name(), k -> new ArrayList<>()).addAll(songs);
+                    songCount += songs.size();
+                }
+                int changed = playlistManager.importPlaylists(imported);
+                playlistHelper.refreshPlaylistList();
+                songListView.refresh();
+                DialogHelper.showInfo("Importar colecciones", changed + " playlists importadas de " + collections.size()
+                        + " colecciones (" + songCount + " canciones encontradas en la biblioteca).");
+            });
+        }, "collection-import");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void shutdown() {
+        mediaResolver.shutdownNow();
+        libraryLoader.shutdown();
+        stopLibraryWatcher();
+        playlistManager.shutdown();
+    }
+
+    /**
+     * Aplica a las playlists y a la lista visible solo las canciones añadidas o eliminadas,
+     * sin reconstruir todas las listas como hace {@link #loadSongs}.
+     */
+    private void applyLibraryDelta(MusicManager.LibraryDelta delta) {
+        if (delta.isEmpty()) return;
+        Set<String> removed = new HashSet<>(delta.removed());
+
+        List<String> allSongs = new ArrayList<>(playlistManager.getPlaylist("Todo"));
+        allSongs.removeIf(removed::contains);
+        allSongs.addAll(delta.added());
+        playlistManager.setPlaylistSongs("Todo", allSongs);
+
+        if (!removed.isEmpty()) {
+            // Las playlists sin leer descartan las canciones que faltan al leerlas.
+            for (String playlistName : playlistManager.getLoadedPlaylists()) {
+                if (playlistName.equals("Todo") || playlistName.equals("Favoritos")) continue;
+                Collection<String> songs = playlistManager.getPlaylist(playlistName);
+                if (songs.stream().anyMatch(removed::contains)) {
+                    List<String> remaining = new ArrayList<>(songs);
+                    remaining.removeIf(removed::contains);
+                    playlistManager.setPlaylistSongs(playlistName, remaining);
+                }
+            }
+            favoritesManager.validateFavorites(musicManager.getSongNames());
+            smartPlaylistManager.songsRemoved(removed);
+        }
+        smartPlaylistManager.songsAdded(delta.added());
+
+        String currentPlaylist = playlistHelper.getSelectedPlaylist();
+        if (currentPlaylist == null) return;
+        masterSongList.removeAll(removed);
+        if (currentPlaylist.equals("Todo") && !delta.added().isEmpty()) {
+            // Ordenada, las canciones nuevas no van al final.
+            if (songOrder.field() != null) loadPlaylistSongs("Todo");
+            else masterSongList.addAll(delta.added());
+        }
+        searchManager.refresh();
+    }
+
     private void refreshUIState() {
         String currentPlaylist = playlistHelper.getSelectedPlaylist();
         if (currentPlaylist != null) {
@@ -219,32 +416,40 @@ public class UIController {
     
     public void prepareCurrentSongForReplay() {
         String currentSong = currentSongLabel.getText();
-        if (currentSong != null && !currentSong.isEmpty()) {
-            String path = musicManager.getSongPath(currentSong);
-            if (path != null) {
-                audioPlayer.media().prepare(path);
-            }
+        MusicManager.MediaSource source = currentSong != null ? musicManager.getMediaSource(currentSong) : null;
+        if (source != null) {
+            long request = playRequest;
+            resolveMedia(() -> musicManager.getFilePath(source, source.audioFile()), path -> {
+                if (path != null && request == playRequest) audioPlayer.media().prepare(path);
+            });
         }
     }
     
     private void selectAndPreloadLastSong(String lastSong) {
         if (lastSong == null || lastSong.isEmpty()) return;
-        if (masterSongList.isEmpty()) {
-            loadSongs(new File(configManager.getLastFolder()));
+        if (!musicManager.hasSong(lastSong)) {
+            // Todavía no se ha escaneado: se precarga cuando aparezca.
+            pendingLastSong = lastSong;
+            return;
         }
+        pendingLastSong = null;
         Platform.runLater(() -> {
             int index = masterSongList.indexOf(lastSong);
-            if (index >= 0) {
+            MusicManager.MediaSource source = musicManager.getMediaSource(lastSong);
+            if (index >= 0 && source != null) {
                 songListView.getSelectionModel().select(index);
                 songListView.scrollTo(index);
                 currentSongLabel.setText(lastSong);
                 updateFavoriteButton(lastSong);
                 updateCoverImage(lastSong);
-                String path = musicManager.getSongPath(lastSong);
-                if (path != null) {
-                    playbackManager.onNewMedia();
-                    audioPlayer.media().prepare(path);
-                }
+                long request = ++playRequest;
+                musicManager.setCurrentSong(lastSong);
+                resolveMedia(() -> musicManager.getFilePath(source, source.audioFile()), path -> {
+                    if (path != null && request == playRequest) {
+                        playbackManager.onNewMedia();
+                        audioPlayer.media().prepare(path);
+                    }
+                });
                 playbackManager.updatePlayPauseButton(false);
                 musicManager.clearHistory();
                 musicManager.addToHistory(lastSong);
@@ -274,15 +479,27 @@ public class UIController {
     }
 
     private void loadPlaylistSongs(String playlistName) {
-        List<String> songs = playlistManager.getPlaylist(playlistName);
+        // Mientras se escanea, "Todo" aún no está guardada: se muestra lo que ya se ha cargado.
+        Collection<String> songs;
+        if (playlistName.equals("Todo") && libraryLoader.isLoading()) {
+            songs = new ArrayList<>(musicManager.getSongNames());
+        } else if (playlistName.equals("Todo") && songOrder.field() != null) {
+            songs = musicManager.getSongsSortedBy(songOrder.field(), false);
+        } else if (smartPlaylistManager.isSmartPlaylist(playlistName)) {
+            songs = smartPlaylistManager.getSongs(playlistName);
+        } else {
+            songs = playlistManager.getPlaylist(playlistName);
+        }
         masterSongList.setAll(songs);
         
         if (filteredSongList == null) {
             filteredSongList = new FilteredList<>(masterSongList, s -> true);
-            searchManager.setFilteredList(filteredSongList);
+            sortedSongList = new SortedList<>(filteredSongList);
+            searchManager.setFilteredList(filteredSongList, sortedSongList);
+            facetHelper.setSongList(filteredSongList);
         }
         
-        songListView.setItems(filteredSongList);
+        songListView.setItems(sortedSongList);
         scrollToCurrentSong();
     }
     
@@ -292,6 +509,13 @@ public class UIController {
         playSong(selectedSong, false);
     }
 
+    private static UIHelper.SongOrder parseSongOrder(String name) {
+        for (UIHelper.SongOrder order : UIHelper.SongOrder.values()) {
+            if (order.name().equals(name)) return order;
+        }
+        return UIHelper.SongOrder.LIBRARY;
+    }
+
     private void updateFavoriteButton(String songName) {
         favoriteButton.setText(favoritesManager.isFavorite(songName) ? "♥" : "♡");
     }
@@ -307,24 +531,24 @@ public class UIController {
     }
 
     public void playNextSong() {
-        if (filteredSongList == null || filteredSongList.isEmpty()) return;
+        if (sortedSongList == null || sortedSongList.isEmpty()) return;
 
         if (playbackManager.isShuffleEnabled()) {
-            int index = playbackManager.getRandomIndex(filteredSongList.size());
-            playSong(filteredSongList.get(index), false);
+            int index = playbackManager.getRandomIndex(sortedSongList.size());
+            playSong(sortedSongList.get(index), false);
         } else {
             int currentIndex = songListView.getSelectionModel().getSelectedIndex();
-            int nextIndex = (currentIndex + 1) % filteredSongList.size();
-            playSong(filteredSongList.get(nextIndex), false);
+            int nextIndex = (currentIndex + 1) % sortedSongList.size();
+            playSong(sortedSongList.get(nextIndex), false);
         }
     }
 
     public void playPreviousSong() {
-        if (filteredSongList == null || filteredSongList.isEmpty()) return;
+        if (sortedSongList == null || sortedSongList.isEmpty()) return;
 
         int currentIndex = songListView.getSelectionModel().getSelectedIndex();
-        int prevIndex = currentIndex > 0 ? currentIndex - 1 : filteredSongList.size() - 1;
-        playSong(filteredSongList.get(prevIndex), false);
+        int prevIndex = currentIndex > 0 ? currentIndex - 1 : sortedSongList.size() - 1;
+        playSong(sortedSongList.get(prevIndex), false);
     }
 
     public void playPreviousFromHistory() {
@@ -339,24 +563,54 @@ public class UIController {
     }
 
     private void playSong(String songName, boolean fromHistory) {
-        if (songName == null) return;
-        String songPath = musicManager.getSongPath(songName);
-        if (songPath == null) return;
+        MusicManager.MediaSource source = songName != null ? musicManager.getMediaSource(songName) : null;
+        if (source == null) return;
+        long request = ++playRequest;
+        musicManager.setCurrentSong(songName);
+        resolveMedia(() -> {
+            MusicManager.MediaSource media = MusicManager.refreshMedia(source);
+            return new MediaPaths(media, musicManager.getFilePath(media, media.audioFile()),
+                    musicManager.getFilePath(media, media.videoFile()));
+        }, paths -> {
+            if (paths == null) return;
+            musicManager.storeMedia(paths.media());
+            if (paths.audio() != null && request == playRequest) startSong(songName, fromHistory, paths);
+        });
+    }
+
+    /**
+     * Calcula value en el hilo media-resolver (puede extraer de un .osz) y entrega el resultado en el hilo
+     * de JavaFX; si falla, entrega null. value no debe leer la biblioteca: trabaja con una
+     * {@link MusicManager.MediaSource} tomada antes en el hilo de JavaFX.
+     */
+    private <T> void resolveMedia(Supplier<T> value, Consumer<T> then) {
+        mediaResolver.execute(() -> {
+            T result = null;
+            try {
+                result = value.get();
+            } catch (RuntimeException e) {
+                System.err.println("No se pudieron preparar los archivos de la canción: " + e);
+            }
+            T resolved = result;
+            Platform.runLater(() -> then.accept(resolved));
+        });
+    }
 
+    private void startSong(String songName, boolean fromHistory, MediaPaths paths) {
         playbackManager.onNewMedia();
 
         audioPlayer.controls().stop();
         videoPlayer.controls().stop();
 
-        String videoPath = musicManager.getVideoPath(songName);
-        if (videoPath != null && new File(videoPath).exists()) {
-            videoPlayer.media().play(videoPath, ":no-audio");
+        if (paths.video() != null) {
+            videoPlayer.media().play(paths.video(), ":no-audio");
             videoVisibilityHelper.showVideo();
         } else {
             videoVisibilityHelper.hideVideo();
         }
 
-        audioPlayer.media().play(songPath);
+        audioPlayer.media().play(paths.audio());
+        smartPlaylistManager.songPlayed(songName);
 
         currentSongLabel.setText(songName);
         updateFavoriteButton(songName);
@@ -382,8 +636,8 @@ public class UIController {
     private void scrollToCurrentSong() {
         Platform.runLater(() -> {
             String currentSong = currentSongLabel.getText();
-            if (currentSong != null && filteredSongList != null && !filteredSongList.isEmpty()) {
-                int index = filteredSongList.indexOf(currentSong);
+            if (currentSong != null && sortedSongList != null && !sortedSongList.isEmpty()) {
+                int index = sortedSongList.indexOf(currentSong);
                 if (index >= 0) {
                     songListView.getSelectionModel().select(index);
                     songListView.scrollTo(index);
@@ -392,21 +646,70 @@ public class UIController {
         });
     }
 
+    /**
+     * Escanea la carpeta en segundo plano. Las canciones aparecen en "Todo" a medida que se encuentran;
+     * las playlists, favoritos e historial se revalidan solo cuando la biblioteca está completa.
+     */
     private void loadSongs(File folder) {
-        Map<String, String> loadedSongs = musicManager.loadSongsFromFolder(folder);
-        Set<String> allSongs = loadedSongs.keySet();
+        stopLibraryWatcher();
+        // Mientras se escanea, la biblioteca está a medias: una playlist que se lea ahora perdería las
+        // canciones que aún no se han encontrado. Se leen tal cual y se revalidan al terminar.
+        playlistManager.setSongResolver(null);
+
+        libraryLoader.load(folder, new LibraryLoader.Listener() {
+            @Override
+            public void onSongsAdded(List<String> songs) {
+                if ("Todo".equals(playlistHelper.getSelectedPlaylist())) {
+                    masterSongList.addAll(songs);
+                    searchManager.refresh();
+                }
+                if (pendingLastSong != null && musicManager.hasSong(pendingLastSong)) {
+                    selectAndPreloadLastSong(pendingLastSong);
+                }
+            }
+
+            @Override
+            public void onProgress(int scannedFolders, int totalFolders) {
+                scanProgress.setVisible(true);
+                scanProgress.setProgress(totalFolders > 0 ? (double) scannedFolders / totalFolders : ProgressBar.INDETERMINATE_PROGRESS);
+                scanStatusLabel.setText(scannedFolders + " / " + totalFolders);
+            }
+
+            @Override
+            public void onFinished() {
+                scanProgress.setVisible(false);
+                pendingLastSong = null;
+                onLibraryLoaded();
+                startLibraryWatcher(folder);
+            }
+        });
+
+        if ("Todo".equals(playlistHelper.getSelectedPlaylist())) {
+            masterSongList.clear();
+        }
+    }
+
+    private void onLibraryLoaded() {
+        Set<String> allSongs = musicManager.getSongNames();
         
         playlistManager.setPlaylistSongs("Todo", new ArrayList<>(allSongs));
 
-        for (String playlistName : playlistManager.getAllPlaylists()) {
+        // Se guardan las mismas instancias de nombre que la biblioteca para no duplicar cadenas. Las playlists
+        // que aún no se han leído lo harán al leerlas, hasta el próximo escaneo.
+        playlistManager.setSongResolver(musicManager::canonicalSongName);
+        for (String playlistName : playlistManager.getLoadedPlaylists()) {
             if (!playlistManager.isSpecialPlaylist(playlistName)) {
-                List<String> currentSongs = new ArrayList<>(playlistManager.getPlaylist(playlistName));
-                currentSongs.removeIf(song -> !allSongs.contains(song));
+                List<String> currentSongs = new ArrayList<>();
+                for (String song : playlistManager.getPlaylist(playlistName)) {
+                    String canonical = musicManager.canonicalSongName(song);
+                    if (canonical != null) currentSongs.add(canonical);
+                }
                 playlistManager.setPlaylistSongs(playlistName, currentSongs);
             }
         }
 
         favoritesManager.validateFavorites(allSongs);
+        smartPlaylistManager.rebuild();
 
         List<String> currentHistory = new ArrayList<>(musicManager.getHistory());
         currentHistory.removeIf(song -> !allSongs.contains(song));
@@ -416,13 +719,32 @@ public class UIController {
         Collections.reverse(hm);
         historyManager.setHistory(hm, hm.isEmpty() ? -1 : hm.size() - 1);
 
-        playlistManager.savePlaylists();
         playlistHelper.refreshPlaylistList();
-        loadPlaylistSongs("Todo");
+
+        String currentPlaylist = playlistHelper.getSelectedPlaylist();
+        // Mientras se escanea, "Todo" se rellena en el orden en que aparecen las canciones.
+        if (currentPlaylist != null && (!currentPlaylist.equals("Todo") || songOrder.field() != null)) {
+            loadPlaylistSongs(currentPlaylist);
+        } else {
+            scrollToCurrentSong();
+        }
     }
 
     private void updateCoverImage(String songName) {
-        Image coverImage = coverManager.getCoverImage(songName);
+        long request = ++coverRequest;
+        MusicManager.MediaSource source = musicManager.getMediaSource(songName);
+        resolveMedia(() -> {
+            MusicManager.MediaSource media = source != null ? MusicManager.refreshMedia(source) : null;
+            String coverPath = media != null ? musicManager.getFilePath(media, media.coverFile()) : null;
+            return new Cover(media, coverManager.getCoverImage(coverPath));
+        }, cover -> {
+            if (cover != null && cover.media() != null) musicManager.storeMedia(cover.media());
+            if (request != coverRequest) return;
+            showCoverImage(cover != null ? cover.image() : coverManager.getDefaultCover());
+        });
+    }
+
+    private void showCoverImage(Image coverImage) {
         coverImageView.setImage(coverImage);
         Platform.runLater(() -> {
             if (mediaContainer.getScene() != null && mediaContainer.getScene().getWindow() != null) {
@@ -3,12 +3,17 @@ package com.osuplayer;
 import java.io.File;
 import java.util.function.Consumer;
 
+import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.Slider;
 import javafx.scene.control.TextField;
+import javafx.scene.control.ToggleButton;
+import javafx.scene.control.Tooltip;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.StackPane;
@@ -20,7 +25,33 @@ public final class UIHelper {
 
     private UIHelper() {}
 
-    public record TopBarComponents(HBox bar, TextField searchField) {}
+    /** Orden de la lista "Todo". field es null para el orden de la biblioteca. */
+    public enum SongOrder {
+        LIBRARY("Sin ordenar", null),
+        TITLE("Título", SongField.TITLE),
+        ARTIST("Artista", SongField.ARTIST),
+        CREATOR("Mapper", SongField.CREATOR),
+        BPM("BPM", SongField.BPM);
+
+        private final String label;
+        private final SongField field;
+
+        SongOrder(String label, SongField field) {
+            this.label = label;
+            this.field = field;
+        }
+
+        public SongField field() {
+            return field;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    public record TopBarComponents(HBox bar, TextField searchField, ToggleButton fuzzySearchToggle, ChoiceBox<SongOrder> songOrderChoice, ProgressBar scanProgress, Label scanStatusLabel) {}
     public record ControlBarComponents(VBox bar, Slider progressSlider, Label timeLabel, Slider volumeSlider, Button previousButton, Button playPauseButton, Button stopButton, Button nextButton, Button shuffleButton) {}
 
     public static TopBarComponents createTopBar(Stage ownerStage, Consumer<File> onFolderChosen) {
@@ -28,8 +59,12 @@ public final class UIHelper {
         chooseFolderButton.setMaxWidth(Double.MAX_VALUE);
 
         TextField searchField = new TextField();
-        searchField.setPromptText("Buscar canciones, artistas, creadores o tags...");
+        searchField.setPromptText("Buscar canciones, artistas, creadores o tags... (admite artist:, creator:, tag:, bpm>180)");
         HBox.setHgrow(searchField, Priority.ALWAYS);
+        ToggleButton fuzzySearchToggle = new ToggleButton("≈");
+        fuzzySearchToggle.setTooltip(new Tooltip("Búsqueda aproximada: tolera errores de escritura y ordena por parecido"));
+        ChoiceBox<SongOrder> songOrderChoice = new ChoiceBox<>(FXCollections.observableArrayList(SongOrder.values()));
+        songOrderChoice.setTooltip(new Tooltip("Orden de la lista Todo"));
 
         chooseFolderButton.setOnAction(e -> {
             DirectoryChooser directoryChooser = new DirectoryChooser();
@@ -45,11 +80,19 @@ public final class UIHelper {
             }
         });
 
-        HBox topBox = new HBox(10, chooseFolderButton, searchField);
+        ProgressBar scanProgress = new ProgressBar(0);
+        scanProgress.setPrefWidth(120);
+        Label scanStatusLabel = new Label();
+        scanProgress.setVisible(false);
+        scanProgress.managedProperty().bind(scanProgress.visibleProperty());
+        scanStatusLabel.visibleProperty().bind(scanProgress.visibleProperty());
+        scanStatusLabel.managedProperty().bind(scanProgress.visibleProperty());
+
+        HBox topBox = new HBox(10, chooseFolderButton, searchField, fuzzySearchToggle, songOrderChoice, scanProgress, scanStatusLabel);
         topBox.setPadding(new Insets(10));
         topBox.setAlignment(Pos.CENTER_LEFT);
 
-        return new TopBarComponents(topBox, searchField);
+        return new TopBarComponents(topBox, searchField, fuzzySearchToggle, songOrderChoice, scanProgress, scanStatusLabel);
     }
     
     public static VBox createMediaPanel(StackPane mediaDisplayStack, Label currentSongLabel, Button favoriteButton) {
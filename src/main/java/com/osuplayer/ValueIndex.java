@@ -0,0 +1,72 @@
+package com.osuplayer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Índice exacto valor → IDs de canción, para campos con valores repetidos como los tags o el creador.
+ * Cada valor distinto (ya normalizado) se guarda una sola vez, con el texto original con que apareció por
+ * primera vez para mostrarlo, y apunta a un {@link CompressedBitSet} de IDs. Al modificar o borrar una
+ * canción hay que quitarla de los valores que tenía.
+ */
+final class ValueIndex {
+
+    /** Un valor con el número de canciones que lo tienen. */
+    record Count(String value, String label, int count) {}
+
+    private static final class Entry {
+        final String label;
+        final CompressedBitSet ids = new CompressedBitSet();
+
+        Entry(String label) {
+            this.label = label;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    void add(String value, String label, int id) {
+        entries.computeIfAbsent(value, v -> new Entry(label)).ids.add(id);
+    }
+
+    void remove(String value, int id) {
+        Entry entry = entries.get(value);
+        if (entry == null) return;
+        entry.ids.remove(id);
+        if (entry.ids.isEmpty()) entries.remove(value);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    /** Número de canciones con el valor. */
+    int count(String value) {
+        Entry entry = entries.get(value);
+        return entry != null ? entry.ids.cardinality() : 0;
+    }
+
+    BitSet bits(String value) {
+        Entry entry = entries.get(value);
+        return entry != null ? entry.ids.toBitSet() : new BitSet();
+    }
+
+    /**
+     * Cuántas canciones de la selección tiene cada valor, de más a menos y como mucho limit. Los valores
+     * sin ninguna canción seleccionada no aparecen.
+     */
+    List<Count> counts(BitSet selection, int limit) {
+        List<Count> counts = new ArrayList<>();
+        int selected = selection.cardinality();
+        if (selected == 0) return counts;
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            int count = e.getValue().ids.andCardinality(selection);
+            if (count > 0) counts.add(new Count(e.getKey(), e.getValue().label, count));
+        }
+        counts.sort((a, b) -> a.count() != b.count() ? Integer.compare(b.count(), a.count()) : a.label().compareToIgnoreCase(b.label()));
+        return counts.size() > limit ? new ArrayList<>(counts.subList(0, limit)) : counts;
+    }
+}
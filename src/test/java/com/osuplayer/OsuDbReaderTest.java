@@ -0,0 +1,246 @@
+package com.osuplayer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Escribe osu!.db pequeños con cada variante del formato (antes de 20140609, entre 20140609 y 20191106,
+ * desde 20191106 y desde 20250107) y comprueba lo que se lee de ellos.
+ */
+class OsuDbReaderTest {
+
+    private static final String LONG_TITLE = "Título largo ".repeat(12);
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @ValueSource(ints = { 20131216, 20140609, 20191106, 20250107 })
+    void readsEveryFormatVersion(int version) throws IOException {
+        DbWriter db = new DbWriter(version);
+        db.header("Jugador", 3);
+        db.beatmap(new Entry("Camellia", "かめりあ", LONG_TITLE, "", "Mapper", "Extra", "audio.mp3",
+                "0123456789abcdef0123456789abcdef", "song [Extra].osu", "tech  speed", "", 1234, 56789, false,
+                "1234 Camellia - Song"));
+        // Los .osz2 no tienen carpeta en disco y se descartan.
+        db.beatmap(new Entry("A", null, "B", null, "C", "D", "a.mp3", "ffff", "b.osu", null, null, 1, 0, true, "osz2"));
+        // Las dificultades sin carpeta también.
+        db.beatmap(new Entry("A", null, "B", null, "C", "D", "a.mp3", "eeee", "b.osu", null, null, 1, 0, false, ""));
+
+        List<OsuDbReader.Beatmap> beatmaps = OsuDbReader.read(db.writeTo(dir));
+
+        assertEquals(1, beatmaps.size());
+        OsuDbReader.Beatmap beatmap = beatmaps.get(0);
+        assertEquals("1234 Camellia - Song", beatmap.folderName());
+        assertEquals("song [Extra].osu", beatmap.osuFileName());
+        assertEquals("0123456789abcdef0123456789abcdef", beatmap.md5());
+
+        OsuFileParser.BeatmapMetadata metadata = beatmap.metadata();
+        assertEquals(LONG_TITLE, metadata.title());
+        assertEquals("Camellia", metadata.artist());
+        assertEquals("かめりあ", metadata.artistUnicode());
+        assertNull(metadata.titleUnicode(), "una cadena vacía se lee como ausente");
+        assertNull(metadata.source());
+        assertEquals("Mapper", metadata.creator());
+        assertEquals("audio.mp3", metadata.audioFilename());
+        assertEquals(List.of("tech", "speed"), metadata.tags());
+        assertEquals(1234, metadata.beatmapSetId());
+        assertEquals(56789, metadata.previewTime());
+        assertEquals(200.0, metadata.bpm());
+    }
+
+    @Test
+    void readsLengthsThatNeedSeveralUleb128Bytes() throws IOException {
+        String text = "x".repeat(300);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DbWriter.writeString(out, text);
+        byte[] bytes = out.toByteArray();
+        // 300 = 0b10_0101100: 0xac 0x02
+        assertEquals(0xac, bytes[1] & 0xff);
+        assertEquals(0x02, bytes[2] & 0xff);
+        assertEquals(text, OsuDbReader.readString(ByteBuffer.wrap(bytes)));
+
+        assertNull(OsuDbReader.readString(ByteBuffer.wrap(new byte[] { 0x00 })));
+        assertEquals("", OsuDbReader.readString(ByteBuffer.wrap(new byte[] { 0x0b, 0x00 })));
+    }
+
+    @Test
+    void rejectsTruncatedFiles() throws IOException {
+        DbWriter db = new DbWriter(20250107);
+        db.header("Jugador", 1);
+        db.beatmap(new Entry("A", null, "B", null, "C", "D", "a.mp3", "ffff", "b.osu", "", "", 1, 0, false, "folder"));
+        byte[] bytes = db.bytes();
+        File truncated = dir.resolve("osu!.db").toFile();
+        Files.write(truncated.toPath(), Arrays.copyOf(bytes, bytes.length - 10));
+
+        assertThrows(IOException.class, () -> OsuDbReader.read(truncated));
+    }
+
+    private record Entry(String artist, String artistUnicode, String title, String titleUnicode, String creator,
+                         String difficulty, String audio, String md5, String osuFile, String tags, String source,
+                         int beatmapSetId, int previewTime, boolean osz2, String folder) {}
+
+    /** Escribe un osu!.db con la estructura de la versión indicada. */
+    private static final class DbWriter {
+
+        private final int version;
+        private ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        DbWriter(int version) {
+            this.version = version;
+        }
+
+        void header(String player, int beatmaps) {
+            writeInt(version);
+            writeInt(beatmaps); // carpetas
+            out.write(1);
+            writeLong(0);
+            writeString(out, player);
+            writeInt(beatmaps);
+        }
+
+        void beatmap(Entry entry) {
+            ByteArrayOutputStream file = out;
+            out = new ByteArrayOutputStream();
+            writeString(out, entry.artist());
+            writeString(out, entry.artistUnicode());
+            writeString(out, entry.title());
+            writeString(out, entry.titleUnicode());
+            writeString(out, entry.creator());
+            writeString(out, entry.difficulty());
+            writeString(out, entry.audio());
+            writeString(out, entry.md5());
+            writeString(out, entry.osuFile());
+            out.write(4); // ranked
+            writeShort(100);
+            writeShort(50);
+            writeShort(1);
+            writeLong(638000000000000000L);
+            if (version < 20140609) {
+                out.writeBytes(new byte[] { 9, 4, 6, 8 });
+            } else {
+                for (int i = 0; i < 4; i++) writeFloat(5.5f);
+            }
+            writeDouble(1.4); // velocidad de slider
+            if (version >= 20140609) {
+                // Un par de estrellas en el primer modo para comprobar su tamaño.
+                writeInt(1);
+                out.write(0x08);
+                writeInt(64);
+                if (version >= 20250107) {
+                    out.write(0x0c);
+                    writeFloat(6.1f);
+                } else {
+                    out.write(0x0d);
+                    writeDouble(6.1);
+                }
+                for (int mode = 1; mode < 4; mode++) writeInt(0);
+            }
+            writeInt(120000);
+            writeInt(125000);
+            writeInt(entry.previewTime());
+
+            // 200 BPM casi toda la canción y un cambio breve a 100 BPM al final.
+            writeInt(3);
+            writeTimingPoint(300, 0, true);
+            writeTimingPoint(-50, 1000, false);
+            writeTimingPoint(600, 100000, true);
+
+            writeInt(42);
+            writeInt(entry.beatmapSetId());
+            writeInt(0);
+            out.writeBytes(new byte[] { 0, 0, 0, 0 });
+            writeShort(0);
+            writeFloat(0.7f);
+            out.write(0);
+            writeString(out, entry.source());
+            writeString(out, entry.tags());
+            writeShort(0);
+            writeString(out, "");
+            out.write(1);
+            writeLong(0);
+            out.write(entry.osz2() ? 1 : 0);
+            writeString(out, entry.folder());
+            writeLong(0);
+            out.writeBytes(new byte[5]);
+            if (version < 20140609) writeShort(0);
+            writeInt(0);
+            out.write(0);
+            ByteArrayOutputStream body = out;
+            out = file;
+
+            if (version < 20191106) writeInt(body.size());
+            out.writeBytes(body.toByteArray());
+        }
+
+        byte[] bytes() {
+            return out.toByteArray();
+        }
+
+        File writeTo(Path dir) throws IOException {
+            Path file = dir.resolve("osu!.db");
+            Files.write(file, bytes());
+            return file.toFile();
+        }
+
+        private void writeTimingPoint(double beatLength, double time, boolean uninherited) {
+            writeDouble(beatLength);
+            writeDouble(time);
+            out.write(uninherited ? 1 : 0);
+        }
+
+        private void writeShort(int value) {
+            out.writeBytes(ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN).putShort((short) value).array());
+        }
+
+        private void writeInt(int value) {
+            out.writeBytes(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array());
+        }
+
+        private void writeLong(long value) {
+            out.writeBytes(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(value).array());
+        }
+
+        private void writeFloat(float value) {
+            out.writeBytes(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(value).array());
+        }
+
+        private void writeDouble(double value) {
+            out.writeBytes(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putDouble(value).array());
+        }
+
+        /** 0x00 para null; si no, 0x0b, la longitud en ULEB128 y los bytes UTF-8. */
+        static void writeString(ByteArrayOutputStream out, String value) {
+            if (value == null) {
+                out.write(0x00);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.write(0x0b);
+            int length = bytes.length;
+            do {
+                int b = length & 0x7f;
+                length >>>= 7;
+                out.write(length != 0 ? b | 0x80 : b);
+            } while (length != 0);
+            out.writeBytes(bytes);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.osuplayer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OsuHeaderReaderTest {
+
+    private static final String TIMING_POINTS = "0,300,4,2,0,50,1,0\n1000,-100,4,2,0,50,0,0\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsSectionAfterALongEventsSection() throws IOException {
+        // [Events] de un storyboard grande: la cabecera de [TimingPoints] queda varios bloques más allá.
+        String events = "Sprite,Foreground,Centre,\"sb/star.png\",320,240\n".repeat(20_000);
+        String text = header() + events + "\n[TimingPoints]\n" + TIMING_POINTS + "\n[HitObjects]\n256,192,0,1,0\n";
+
+        assertEquals(TIMING_POINTS + "\n", readTimingPoints(text, 64 * 1024));
+    }
+
+    @Test
+    void readsSectionAtTheEndOfTheFile() throws IOException {
+        String text = header() + "[TimingPoints]\n" + TIMING_POINTS;
+
+        assertEquals(TIMING_POINTS, readTimingPoints(text, 64 * 1024));
+    }
+
+    @Test
+    void stopsAtMaxBytes() throws IOException {
+        String text = header() + "[TimingPoints]\n" + TIMING_POINTS.repeat(1000);
+
+        assertEquals(100, readTimingPoints(text, 100).length());
+    }
+
+    @Test
+    void returnsNullWithoutTheSection() throws IOException {
+        assertNull(readTimingPoints(header() + "[HitObjects]\n256,192,0,1,0\n", 64 * 1024));
+    }
+
+    private static String header() {
+        return "osu file format v14\n\n[General]\nAudioFilename: audio.mp3\n\n[Metadata]\nTitle:Song\n\n[Events]\n";
+    }
+
+    private String readTimingPoints(String text, int maxBytes) throws IOException {
+        Path file = dir.resolve("map.osu");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = OsuHeaderReader.readHeader(channel, channel.size());
+            ByteBuffer section = OsuHeaderReader.readSection(channel, header.limit(), "TimingPoints", maxBytes);
+            if (section == null) return null;
+            byte[] bytes = new byte[section.remaining()];
+            section.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
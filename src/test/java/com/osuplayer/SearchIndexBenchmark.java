@@ -0,0 +1,141 @@
+package com.osuplayer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mide la búsqueda aproximada de {@link SearchIndex} sobre bibliotecas sintéticas de 10k, 50k y 100k
+ * canciones con 20 tags cada una, y compara el resultado con una puntuación exhaustiva hasta 50k. No es un
+ * test: se ejecuta a mano tras {@code mvn test-compile} con
+ *
+ * <pre>
+ *   java -cp target/classes:target/test-classes com.osuplayer.SearchIndexBenchmark [tamaños...]
+ * </pre>
+ *
+ * Cada 997 canciones hay una "Camellia - Feelin Sky". Con 100k son 101 coincidencias exactas de "camellia"
+ * en el nombre, más que el límite de 100: en cuanto el resultado se llena con ellas ningún otro candidato
+ * puede mejorarlo y la búsqueda termina. Con 50k solo hay 51, así que hay que seguir puntuando candidatos
+ * por si alguno tiene uno o dos errores, hasta agotar el máximo de puntuadas; por eso tarda más que con
+ * 100k. La columna "exactas" lo muestra. Con "chiro" no pasa aunque haya miles de exactas, porque casi todas
+ * están en los tags y una coincidencia en el nombre las adelantaría.
+ */
+public final class SearchIndexBenchmark {
+
+    private static final int LIMIT = 100;
+    private static final int REPETITIONS = 20;
+    private static final int WARMUP = 5;
+    private static final int BRUTE_FORCE_MAX = 50_000;
+    private static final String[] QUERIES = {
+            "camelia", "camellia", "feelin ski", "kanoristu", "dancerock", "sutorimiya", "zzzzqqq", "chiro"
+    };
+    private static final String[] SYLLABLES = {
+            "ka", "no", "ri", "su", "to", "mi", "ya", "re", "lo", "ve", "sta", "ra", "dan", "ce", "hi", "me", "ko",
+            "zu", "ne", "chi", "ro", "ck", "po", "p"
+    };
+
+    private SearchIndexBenchmark() {}
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[] { 10_000, 50_000, 100_000 };
+        for (int size : sizes) run(size);
+    }
+
+    private static void run(int size) {
+        SearchIndex index = new SearchIndex();
+        String[] keys = library(size, index);
+        for (int i = 0; i < WARMUP; i++) {
+            for (String query : QUERIES) index.fuzzySearch(query, LIMIT);
+        }
+
+        System.out.println(size + " canciones:");
+        System.out.printf("  %-12s %9s %10s %8s  %s%n", "consulta", "ms", "resultados", "exactas", "exhaustiva");
+        for (String query : QUERIES) {
+            int[] result = null;
+            long start = System.nanoTime();
+            for (int i = 0; i < REPETITIONS; i++) result = index.fuzzySearch(query, LIMIT);
+            double millis = (System.nanoTime() - start) / (REPETITIONS * 1e6);
+
+            String check = "-";
+            if (size <= BRUTE_FORCE_MAX) {
+                int[] expected = bruteForce(keys, query);
+                check = Arrays.equals(result, expected) ? "igual" : "distinta (" + expected.length + ")";
+            }
+            System.out.printf("  %-12s %9.2f %10d %8d  %s%n",
+                    query, millis, result.length, index.search(query).cardinality(), check);
+        }
+    }
+
+    /** Genera la biblioteca con una semilla fija y la indexa. Devuelve las claves ya normalizadas. */
+    private static String[] library(int size, SearchIndex index) {
+        Random random = new Random(42);
+        List<String> creators = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) creators.add(word(random, 2 + random.nextInt(3)));
+        List<String> tags = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) tags.add(word(random, 2 + random.nextInt(4)));
+
+        String[] keys = new String[size];
+        for (int i = 0; i < size; i++) {
+            StringBuilder key = new StringBuilder(i % 997 == 0
+                    ? "Camellia - Feelin Sky " + i
+                    : word(random, 3) + " - " + word(random, 2) + " " + i);
+            key.append(SearchIndex.FIELD_SEPARATOR).append(creators.get(random.nextInt(creators.size())));
+            for (int t = 0; t < 20; t++) {
+                key.append(SearchIndex.FIELD_SEPARATOR).append(tags.get(random.nextInt(tags.size())));
+            }
+            keys[i] = index.normalize(key.toString());
+            index.put(i, keys[i]);
+        }
+        return keys;
+    }
+
+    private static String word(Random random, int syllables) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < syllables; i++) word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        return word.toString();
+    }
+
+    /**
+     * El mismo orden que la búsqueda aproximada (errores, luego si la coincidencia está en el nombre, luego
+     * posición), calculado con la tabla de distancias completa para cada canción.
+     */
+    private static int[] bruteForce(String[] keys, String query) {
+        int maxEdits = SearchIndex.maxEdits(query.length());
+        int m = query.length();
+        long[] ranked = new long[keys.length];
+        int count = 0;
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int id = 0; id < keys.length; id++) {
+            String key = keys[id];
+            for (int i = 0; i <= m; i++) previous[i] = i;
+            int best = m;
+            int bestEnd = -1;
+            for (int j = 1; j <= key.length() && best > 0; j++) {
+                current[0] = 0;
+                for (int i = 1; i <= m; i++) {
+                    int cost = query.charAt(i - 1) == key.charAt(j - 1) ? 0 : 1;
+                    current[i] = Math.min(Math.min(current[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+                }
+                if (current[m] < best) {
+                    best = current[m];
+                    bestEnd = j - 1;
+                }
+                int[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+            if (best > maxEdits) continue;
+            int separator = key.indexOf(SearchIndex.FIELD_SEPARATOR);
+            boolean inName = separator < 0 || bestEnd < separator;
+            ranked[count++] = ((2L * best + (inName ? 0 : 1)) << 32) | id;
+        }
+        Arrays.sort(ranked, 0, count);
+        int[] ids = new int[Math.min(LIMIT, count)];
+        for (int i = 0; i < ids.length; i++) ids[i] = (int) ranked[i];
+        return ids;
+    }
+}
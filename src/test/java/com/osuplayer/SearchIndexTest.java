@@ -0,0 +1,40 @@
+package com.osuplayer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.BitSet;
+
+import org.junit.jupiter.api.Test;
+
+class SearchIndexTest {
+
+    @Test
+    void reindexingDropsTheOldTrigrams() {
+        SearchIndex index = new SearchIndex();
+        index.put(0, "camellia - ghost");
+        index.put(1, "camellia - exit this earth");
+        index.put(0, "xi - freedom dive");
+
+        assertEquals(1, index.estimate("camellia"));
+        assertEquals(bits(1), index.search("camellia"));
+        assertEquals(bits(0), index.search("freedom"));
+    }
+
+    @Test
+    void removingDropsTheIdFromEveryTrigram() {
+        SearchIndex index = new SearchIndex();
+        index.put(2, "camellia - ghost");
+        index.put(5, "camellia - exit this earth");
+        index.remove(2);
+
+        assertEquals(0, index.estimate("ghost"));
+        assertEquals(1, index.estimate("camellia"));
+        assertEquals(bits(5), index.search("camellia"));
+    }
+
+    private static BitSet bits(int... ids) {
+        BitSet bits = new BitSet();
+        for (int id : ids) bits.set(id);
+        return bits;
+    }
+}
@@ -0,0 +1,122 @@
+package com.osuplayer;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.scene.Scene;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.Menu;
+import javafx.scene.control.MenuItem;
+import javafx.stage.Stage;
+import javafx.util.Callback;
+
+/**
+ * Mide cuánta memoria reserva el hilo de JavaFX por fila al desplazar la lista de canciones, con
+ * {@link SongListCell} y con una celda que crea su menú contextual en cada updateItem, como se hacía antes
+ * de {@link SongContextMenu}. Usa Monocle sin pantalla, así que no necesita escritorio (en Linux sí las
+ * bibliotecas de texto de JavaFX, como Pango). No es un test: se ejecuta a mano con
+ *
+ * <pre>
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat target/cp.txt) com.osuplayer.SongListScrollBenchmark [playlists]
+ * </pre>
+ */
+public final class SongListScrollBenchmark {
+
+    private static final int SONGS = 100_000;
+    private static final int ROWS = 5_000;
+    private static final int ROUNDS = 5;
+
+    private SongListScrollBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("glass.platform", "Monocle");
+        System.setProperty("monocle.platform", "Headless");
+        System.setProperty("prism.order", "sw");
+
+        int playlistCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        List<String> playlists = new ArrayList<>();
+        for (int i = 0; i < playlistCount; i++) playlists.add("Playlist " + i);
+        List<String> songs = new ArrayList<>(SONGS);
+        for (int i = 0; i < SONGS; i++) songs.add(i + " Artista - Canción [Dificultad " + (i % 7) + "]");
+
+        CountDownLatch started = new CountDownLatch(1);
+        Platform.startup(started::countDown);
+        started.await();
+
+        // Al desplazarse no se abre el menú, así que no le hacen falta los gestores.
+        SongContextMenu sharedMenu = new SongContextMenu(null, null, null, () -> {});
+        CountDownLatch done = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            try {
+                System.out.println(playlistCount + " playlists, " + ROWS + " filas por vuelta:");
+                measure("SongListCell", songs, lv -> new SongListCell(sharedMenu));
+                measure("menú por celda", songs, lv -> new MenuPerCell(playlists));
+            } finally {
+                done.countDown();
+            }
+        });
+        done.await();
+        Platform.exit();
+    }
+
+    private static void measure(String name, List<String> songs, Callback<ListView<String>, ListCell<String>> cellFactory) {
+        ListView<String> listView = new ListView<>(FXCollections.observableArrayList(songs));
+        listView.setCellFactory(cellFactory);
+        Stage stage = new Stage();
+        stage.setScene(new Scene(listView, 400, 600));
+        stage.show();
+        listView.layout();
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int first = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytes = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int row = first; row < first + ROWS; row++) {
+                listView.scrollTo(row);
+                listView.layout();
+            }
+            double micros = (System.nanoTime() - start) / (ROWS * 1e3);
+            double kilobytes = (threads.getCurrentThreadAllocatedBytes() - bytes) / (ROWS * 1024.0);
+            // La primera vuelta calienta el JIT.
+            if (round > 0) System.out.printf("  %-15s %8.1f KB/fila %8.1f us/fila%n", name, kilobytes, micros);
+            first += ROWS;
+        }
+        stage.close();
+    }
+
+    /** La celda de antes: un ContextMenu nuevo, con una opción por playlist, cada vez que cambia de canción. */
+    private static final class MenuPerCell extends ListCell<String> {
+
+        private final List<String> playlists;
+
+        MenuPerCell(List<String> playlists) {
+            this.playlists = playlists;
+        }
+
+        @Override
+        protected void updateItem(String item, boolean empty) {
+            super.updateItem(item, empty);
+            setText(empty ? null : item);
+            if (empty || item == null) {
+                setContextMenu(null);
+                return;
+            }
+            Menu addToPlaylistMenu = new Menu("Añadir a playlist");
+            addToPlaylistMenu.getItems().add(new MenuItem("Favoritos"));
+            for (String playlist : playlists) {
+                MenuItem playlistItem = new MenuItem(playlist);
+                playlistItem.setOnAction(e -> System.out.println(playlist + ": " + item));
+                addToPlaylistMenu.getItems().add(playlistItem);
+            }
+            setContextMenu(new ContextMenu(addToPlaylistMenu, new MenuItem("Exportar canción")));
+        }
+    }
+}
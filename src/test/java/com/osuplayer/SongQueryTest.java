@@ -0,0 +1,25 @@
+package com.osuplayer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+
+class SongQueryTest {
+
+    @Test
+    void quotedValuesReadBackWhole() {
+        for (String tag : List.of("tech", "dance music", "\"meme\"", "12\" remix")) {
+            SongQuery query = SongQuery.parse("tag:" + SongQuery.quote(tag) + " camellia",
+                    value -> value.toLowerCase(Locale.ROOT));
+
+            List<SongQuery.Filter> filters = query.filters();
+            assertEquals(2, filters.size(), tag);
+            assertEquals(SongQuery.Kind.TAG, filters.get(0).kind());
+            assertEquals(tag, filters.get(0).text());
+            assertEquals("camellia", filters.get(1).text());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.osuplayer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SongTableTest {
+
+    @Test
+    void bpmBoundsFollowTheOperator() {
+        SongTable table = new SongTable();
+        int slow = table.add("1", song("Camellia", "Slow", "a", 120));
+        int mid = table.add("2", song("Camellia", "Mid", "a", 180));
+        int alsoMid = table.add("3", song("xi", "Mid", "b", 180));
+        int fast = table.add("4", song("xi", "Fast", "b", 200));
+        table.add("5", song("xi", "Unknown", "b", 0));
+
+        assertEquals(bits(fast), table.query("bpm>180"));
+        assertEquals(bits(mid, alsoMid, fast), table.query("bpm>=180"));
+        assertEquals(bits(slow), table.query("bpm<180"));
+        assertEquals(bits(slow, mid, alsoMid), table.query("bpm<=180"));
+        assertEquals(bits(mid, alsoMid), table.query("bpm:180"));
+        // Las canciones sin BPM no entran en ningún rango.
+        assertEquals(bits(slow), table.query("bpm<150"));
+    }
+
+    @Test
+    void tagAndCreatorAreIntersectedWithText() {
+        SongTable table = new SongTable();
+        int ghost = table.add("1", song("Camellia", "Ghost", "Mapper", 180, "tech", "dubstep"));
+        table.add("2", song("Camellia", "Exit This Earth", "Other", 170, "dubstep"));
+        int freedom = table.add("3", song("xi", "Freedom Dive", "Mapper", 222, "tech"));
+
+        assertEquals(bits(ghost), table.query("tag:tech camellia"));
+        assertEquals(bits(ghost), table.query("camellia creator:mapper"));
+        assertEquals(bits(freedom), table.query("mapper:mapper tag:tech freedom bpm>200"));
+        // El tag tiene que coincidir entero.
+        assertEquals(bits(), table.query("tag:tec camellia"));
+    }
+
+    @Test
+    void unknownFieldsAndBadNumbersAreFreeText() {
+        SongTable table = new SongTable();
+        int remix = table.add("1", song("Artist", "Genre:Remix", "a", 150));
+        int fastEdit = table.add("2", song("Artist", "BPM:Fast Edit", "a", 200));
+
+        assertEquals(bits(remix), table.query("genre:remix"));
+        assertEquals(bits(fastEdit), table.query("bpm:fast"));
+
+        List<SongQuery.Filter> filters = SongQuery.parse("genre:remix bpm>fast", table::normalizeQuery).filters();
+        assertEquals(1, filters.size());
+        assertEquals(SongQuery.Kind.TEXT, filters.get(0).kind());
+        assertEquals("genre:remix bpm>fast", filters.get(0).text());
+    }
+
+    @Test
+    void cachedPlansSeeLibraryChanges() {
+        SongTable table = new SongTable();
+        int ghost = table.add("1", song("Camellia", "Ghost", "a", 180, "tech"));
+        String query = "tag:tech bpm>=170 camellia";
+        assertEquals(bits(ghost), table.query(query));
+
+        int exit = table.add("2", song("Camellia", "Exit This Earth", "a", 170, "tech"));
+        assertEquals(bits(ghost, exit), table.query(query));
+
+        table.set(ghost, "1", song("Camellia", "Ghost", "a", 160, "tech"));
+        assertEquals(bits(exit), table.query(query));
+        assertTrue(table.matches(exit, query));
+
+        table.remove(exit);
+        assertEquals(bits(), table.query(query));
+        assertFalse(table.matches(exit, query));
+    }
+
+    @Test
+    void changingTheNormalizationDropsCachedPlans() {
+        SongTable table = new SongTable();
+        int cafe = table.add("1", song("Artist", "Café", "a", 120));
+        assertEquals(bits(cafe), table.query("café"));
+        assertEquals(bits(cafe), table.query("cafe"));
+
+        // Sin quitar acentos, "café" se analiza de nuevo y deja de coincidir con "cafe".
+        table.setSearchNormalization(new SearchIndex.Normalization(false, false));
+        assertEquals(bits(cafe), table.query("café"));
+        assertEquals(bits(), table.query("cafe"));
+    }
+
+    private static OsuFileParser.BeatmapMetadata song(String artist, String title, String creator, double bpm,
+                                                      String... tags) {
+        return new OsuFileParser.BeatmapMetadata(title, artist, "audio.mp3", creator, List.of(tags), null, null,
+                null, null, null, 0, 0, bpm);
+    }
+
+    private static BitSet bits(int... ids) {
+        BitSet bits = new BitSet();
+        for (int id : ids) bits.set(id);
+        return bits;
+    }
+}